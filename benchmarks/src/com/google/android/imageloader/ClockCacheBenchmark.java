@@ -0,0 +1,141 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks {@link ClockCache} as used for bitmaps: sized in bytes, read on
+ * the UI thread while background tasks insert and evict.
+ */
+@State(Scope.Group)
+public class ClockCacheBenchmark {
+
+    /**
+     * A stand-in for a decoded image, sized in bytes.
+     */
+    static final class Image {
+        final long mSize;
+
+        Image(long size) {
+            mSize = size;
+        }
+    }
+
+    /**
+     * The number of distinct URLs requested.
+     */
+    @Param({"100", "10000"})
+    public int urlCount;
+
+    /**
+     * How many images fit in the cache, as a percentage of the URLs.
+     */
+    @Param({"25", "100"})
+    public int cachePercent;
+
+    private String[] mUrls;
+
+    private Image[] mImages;
+
+    private ClockCache<String, Image> mCache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(0);
+        mUrls = new String[urlCount];
+        mImages = new Image[urlCount];
+        long total = 0;
+        for (int i = 0; i < urlCount; i++) {
+            mUrls[i] = "http://example.com/images/" + i + ".jpg";
+            // Thumbnails between 16K and 64K
+            mImages[i] = new Image(16384 + random.nextInt(49152));
+            total += mImages[i].mSize;
+        }
+        mCache = new ClockCache<String, Image>(Math.max(1, total * cachePercent / 100)) {
+            @Override
+            protected long sizeOf(String key, Image value) {
+                return value.mSize;
+            }
+        };
+        for (int i = 0; i < urlCount; i++) {
+            mCache.put(mUrls[i], mImages[i]);
+        }
+    }
+
+    /**
+     * Per-thread position in the sequence of URLs.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        final Random mRandom = new Random();
+
+        int next(int count) {
+            return mRandom.nextInt(count);
+        }
+    }
+
+    /**
+     * Lookups only, as when rebinding visible rows.
+     */
+    @Benchmark
+    @Group("get")
+    @GroupThreads(4)
+    public Image get(Cursor cursor) {
+        return mCache.get(mUrls[cursor.next(urlCount)]);
+    }
+
+    /**
+     * The UI thread looking up images while tasks store the images that
+     * missed, evicting others when the cache is smaller than the URLs.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Image mixedGet(Cursor cursor) {
+        return mCache.get(mUrls[cursor.next(urlCount)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Image mixedPut(Cursor cursor) {
+        int i = cursor.next(urlCount);
+        return mCache.put(mUrls[i], mImages[i]);
+    }
+
+    /**
+     * Inserts only, so that almost every insert evicts when the cache is
+     * smaller than the URLs.
+     */
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public Image churn(Cursor cursor) {
+        int i = cursor.next(urlCount);
+        return mCache.put(mUrls[i], mImages[i]);
+    }
+}
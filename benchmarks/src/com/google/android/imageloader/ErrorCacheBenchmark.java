@@ -0,0 +1,78 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link ErrorCache} lookups, which every task makes before
+ * loading a URL, with some of the URLs and hosts failing.
+ */
+@State(Scope.Benchmark)
+public class ErrorCacheBenchmark {
+
+    /**
+     * The percentage of URLs that have failed.
+     */
+    @Param({"0", "10"})
+    public int failurePercent;
+
+    private static final int URL_COUNT = 1024;
+
+    private static final int HOST_COUNT = 16;
+
+    private String[] mUrls;
+
+    private ErrorCache mErrors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mUrls = new String[URL_COUNT];
+        for (int i = 0; i < URL_COUNT; i++) {
+            mUrls[i] = "http://host" + (i % HOST_COUNT) + ".example.com/" + i + ".jpg";
+        }
+        mErrors = new ErrorCache(new ErrorBackoff());
+        long now = System.currentTimeMillis();
+        Random random = new Random(0);
+        for (int i = 0; i < URL_COUNT; i++) {
+            if (random.nextInt(100) < failurePercent) {
+                mErrors.put(mUrls[i], new IOException("Failed"), now);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int mNext;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Throwable get(Cursor cursor) {
+        cursor.mNext = (cursor.mNext + 1) % URL_COUNT;
+        return mErrors.get(mUrls[cursor.mNext], System.currentTimeMillis());
+    }
+}
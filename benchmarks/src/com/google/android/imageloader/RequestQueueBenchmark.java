@@ -0,0 +1,113 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks {@link RequestQueue} operations with many requests waiting, as
+ * when a fling binds far more rows than the tasks can load.
+ */
+@State(Scope.Thread)
+public class RequestQueueBenchmark {
+
+    /**
+     * A stand-in for a request; only explicit requests cannot be dropped.
+     */
+    static final class Request {
+        final boolean mExplicit;
+
+        Request(boolean explicit) {
+            mExplicit = explicit;
+        }
+    }
+
+    private static final RequestQueue.Policy<Request> POLICY = new RequestQueue.Policy<Request>() {
+        public boolean isDroppable(Request request) {
+            return !request.mExplicit;
+        }
+
+        public void onDropped(Request request) {
+        }
+    };
+
+    /**
+     * The number of requests in the queue.
+     */
+    @Param({"16", "256", "4096"})
+    public int depth;
+
+    private RequestQueue<Request> mQueue;
+
+    private Request[] mRequests;
+
+    private int mNext;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        mQueue = new RequestQueue<Request>(depth, POLICY);
+        mRequests = new Request[depth];
+        for (int i = 0; i < depth; i++) {
+            mRequests[i] = new Request(false);
+            if (i % 2 == 0) {
+                mQueue.addFirst(mRequests[i]);
+            } else {
+                mQueue.addLast(mRequests[i]);
+            }
+        }
+        mNext = 0;
+    }
+
+    /**
+     * Serves a request and queues another, keeping the depth constant.
+     */
+    @Benchmark
+    public Request pollAndAdd() {
+        Request request = mQueue.poll();
+        mQueue.addFirst(request);
+        return request;
+    }
+
+    /**
+     * Cancels a request anywhere in the queue and queues it again, as when a
+     * row is recycled for a different URL.
+     */
+    @Benchmark
+    public boolean removeAndAdd() {
+        Request request = mRequests[mNext];
+        mNext = (mNext + 1) % depth;
+        boolean removed = mQueue.remove(request);
+        mQueue.addFirst(request);
+        return removed;
+    }
+
+    /**
+     * Adds requests to a full queue, so that every add drops the oldest
+     * droppable request.
+     */
+    @Benchmark
+    public int addWhenFull() {
+        mQueue.addFirst(mRequests[mNext]);
+        mNext = (mNext + 1) % depth;
+        return mQueue.size();
+    }
+}
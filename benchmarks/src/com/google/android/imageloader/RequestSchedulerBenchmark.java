@@ -0,0 +1,138 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayDeque;
+
+/**
+ * Benchmarks the bookkeeping that {@link ImageLoader} does on the UI thread
+ * for each bind: joining a request in flight or submitting a new one, and
+ * cancelling the request of a recycled row.
+ * <p>
+ * Tasks are stubbed: a started request finishes when the next request is
+ * submitted, so nothing is decoded.
+ */
+@State(Scope.Thread)
+public class RequestSchedulerBenchmark {
+
+    static final class Request {
+        final String mKey;
+
+        Request(String key) {
+            mKey = key;
+        }
+    }
+
+    private static final int TASK_LIMIT = 3;
+
+    /**
+     * The number of distinct URLs bound.
+     */
+    @Param({"64", "4096"})
+    public int urlCount;
+
+    /**
+     * The capacity of the request queue.
+     */
+    @Param({"64", "1024"})
+    public int queueCapacity;
+
+    private String[] mUrls;
+
+    private int mNext;
+
+    private RequestScheduler<Request> mScheduler;
+
+    private final ArrayDeque<Request> mRunning = new ArrayDeque<Request>();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        mUrls = new String[urlCount];
+        for (int i = 0; i < urlCount; i++) {
+            mUrls[i] = "http://example.com/images/" + i + ".jpg";
+        }
+        mRunning.clear();
+        mScheduler = new RequestScheduler<Request>(TASK_LIMIT, queueCapacity, new RequestScheduler.Callback<Request>() {
+                    public String getKey(Request request) {
+                        return request.mKey;
+                    }
+
+                    public boolean isDroppable(Request request) {
+                        return true;
+                    }
+
+                    public void onDropped(Request request) {
+                    }
+
+                    public void start(Request request) {
+                        mRunning.add(request);
+                    }
+                });
+        mNext = 0;
+    }
+
+    private void finishOne() {
+        Request request = mRunning.poll();
+        if (request != null) {
+            mScheduler.finish(request);
+            mScheduler.onTaskFinished();
+        }
+    }
+
+    /**
+     * Binds the next URL, joining the request in flight if there is one.
+     */
+    @Benchmark
+    public Request bind() {
+        finishOne();
+        String url = mUrls[mNext];
+        mNext = (mNext + 1) % urlCount;
+        Request request = mScheduler.get(url);
+        if (request == null) {
+            request = new Request(url);
+            mScheduler.submit(request, true);
+        } else {
+            mScheduler.moveToFront(request);
+        }
+        return request;
+    }
+
+    /**
+     * Binds a URL and cancels it, as when a row scrolls past before its image
+     * is loaded.
+     */
+    @Benchmark
+    public boolean bindAndCancel() {
+        finishOne();
+        String url = mUrls[mNext];
+        mNext = (mNext + 1) % urlCount;
+        Request request = mScheduler.get(url);
+        if (request == null) {
+            request = new Request(url);
+            mScheduler.submit(request, true);
+        }
+        mScheduler.finish(request);
+        return mScheduler.dequeue(request);
+    }
+}
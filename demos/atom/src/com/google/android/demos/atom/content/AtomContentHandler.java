@@ -19,6 +19,7 @@ package com.google.android.demos.atom.content;
 import com.google.android.demos.atom.provider.AtomContract.Entries;
 import com.google.android.demos.atom.provider.AtomContract.FeedsColumns;
 import com.google.android.demos.atom.provider.AtomContract.LinksColumns;
+import com.google.android.feeds.ColumnarCursor;
 import com.google.android.feeds.FeedLoader;
 import com.google.android.feeds.XmlContentHandler;
 
@@ -26,7 +27,6 @@ import org.xml.sax.Attributes;
 
 import android.content.ContentValues;
 import android.database.Cursor;
-import android.database.MatrixCursor;
 import android.os.Bundle;
 import android.sax.Element;
 import android.sax.ElementListener;
@@ -145,7 +145,7 @@ public class AtomContentHandler extends XmlContentHandler {
     /**
      * The output cursor.
      */
-    protected final MatrixCursor mOutput;
+    protected final ColumnarCursor mOutput;
 
     /**
      * The output cursor extras.
@@ -179,7 +179,7 @@ public class AtomContentHandler extends XmlContentHandler {
      *            {@link Cursor#getExtras()}.
      * @throws NullPointerException if either argument is {@code null}.
      */
-    public AtomContentHandler(MatrixCursor output, Bundle extras) {
+    public AtomContentHandler(ColumnarCursor output, Bundle extras) {
         if (output == null) {
             throw new NullPointerException();
         }
@@ -215,7 +215,7 @@ public class AtomContentHandler extends XmlContentHandler {
              */
             public void end() {
                 if (endEntry()) {
-                    MatrixCursor.RowBuilder builder = mOutput.newRow();
+                    ColumnarCursor.RowBuilder builder = mOutput.newRow();
                     int columnCount = mOutput.getColumnCount();
                     for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
                         String columnName = mOutput.getColumnName(columnIndex);
@@ -17,6 +17,7 @@
 package com.google.android.demos.atom.content;
 
 import com.google.android.demos.atom.provider.AtomContract.Entries;
+import com.google.android.feeds.ColumnarCursor;
 import com.google.android.feeds.FeedLoader;
 import com.google.android.feeds.FeedProvider;
 
@@ -26,7 +27,6 @@ import android.content.Context;
 import android.content.UriMatcher;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
-import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Bundle;
 
@@ -69,7 +69,7 @@ public class AtomProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
             String sortOrder) {
-        MatrixCursor cursor = new MatrixCursor(projection);
+        ColumnarCursor cursor = new ColumnarCursor(projection);
         Bundle extras = new Bundle();
         try {
             // Create a handler that will listen for XML events,
@@ -124,7 +124,7 @@ public class JamendoApp extends Application {
         Handler handler = null;
         
         return new ImageLoader(IMAGE_TASK_LIMIT, streamFactory, bitmapHandler, prefetchHandler,
-                ImageLoader.DEFAULT_CACHE_SIZE, handler);
+                ImageLoader.getDefaultCacheSize(context), handler);
     }
 
     private static class IntentSpan extends ClickableSpan {
@@ -151,6 +151,17 @@ public class JamendoApp extends Application {
         mImageLoader = createImageLoader(this);
     }
     
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mImageLoader.onLowMemory();
+    }
+
+    // Called on Ice Cream Sandwich and later
+    public void onTrimMemory(int level) {
+        mImageLoader.onTrimMemory(level);
+    }
+
     @Override
     public void onTerminate() {
         mImageLoader = null;
@@ -18,6 +18,7 @@ package com.google.android.demos.jamendo.content;
 
 import com.google.android.demos.jamendo.R;
 import com.google.android.demos.jamendo.provider.JamendoContract.Albums;
+import com.google.android.feeds.ColumnarCursor;
 import com.google.android.feeds.FeedLoader;
 import com.google.android.feeds.XmlContentHandler;
 
@@ -25,7 +26,6 @@ import org.xml.sax.Attributes;
 
 import android.app.SearchManager;
 import android.content.ContentValues;
-import android.database.MatrixCursor;
 import android.net.Uri;
 import android.sax.Element;
 import android.sax.ElementListener;
@@ -47,7 +47,7 @@ class JamendoContentHandler extends XmlContentHandler {
 
     private final RootElement mRoot;
 
-    private final MatrixCursor mOutput;
+    private final ColumnarCursor mOutput;
 
     private final Map<String, String> mProjectionMap;
 
@@ -55,7 +55,8 @@ class JamendoContentHandler extends XmlContentHandler {
     
     private int mRowCount;
 
-    public JamendoContentHandler(MatrixCursor out, String table, Map<String, String> projectionMap) {
+    public JamendoContentHandler(ColumnarCursor out, String table,
+            Map<String, String> projectionMap) {
         mOutput = out;
         mProjectionMap = projectionMap;
         mRow = new ContentValues();
@@ -113,7 +114,7 @@ class JamendoContentHandler extends XmlContentHandler {
          * {@inheritDoc}
          */
         public void end() {
-            MatrixCursor.RowBuilder builder = mOutput.newRow();
+            ColumnarCursor.RowBuilder builder = mOutput.newRow();
             for (String columnName : mOutput.getColumnNames()) {
                 String elementName = getElementName(columnName);
                 String value = mRow.getAsString(elementName);
@@ -147,7 +148,7 @@ class JamendoContentHandler extends XmlContentHandler {
          * {@inheritDoc}
          */
         public void end(String body) {
-            // MatrixCursor will handle convert types automatically
+            // ColumnarCursor converts types when they are read
             mRow.put(mElementName, body);
         }
     }
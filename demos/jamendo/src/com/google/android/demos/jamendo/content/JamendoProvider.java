@@ -26,6 +26,7 @@ import com.google.android.demos.jamendo.provider.JamendoContract.Reviews;
 import com.google.android.demos.jamendo.provider.JamendoContract.Tags;
 import com.google.android.demos.jamendo.provider.JamendoContract.Tracks;
 import com.google.android.demos.jamendo.provider.JamendoContract.Users;
+import com.google.android.feeds.ColumnarCursor;
 import com.google.android.feeds.FeedLoader;
 import com.google.android.feeds.FeedProvider;
 
@@ -36,7 +37,6 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
-import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.BaseColumns;
@@ -291,7 +291,7 @@ public class JamendoProvider extends ContentProvider {
                     return null;
             }
         }
-        MatrixCursor output = new MatrixCursor(projection);
+        ColumnarCursor output = new ColumnarCursor(projection);
         Bundle extras = new Bundle();
         try {
             if (selection == null) {
@@ -18,6 +18,7 @@ package com.google.android.demos.rss.content;
 
 import com.google.android.demos.rss.provider.RssContract.Channels;
 import com.google.android.demos.rss.provider.RssContract.Items;
+import com.google.android.feeds.ColumnarCursor;
 import com.google.android.feeds.FeedLoader;
 import com.google.android.feeds.XmlContentHandler;
 
@@ -26,7 +27,6 @@ import org.xml.sax.ContentHandler;
 
 import android.content.ContentValues;
 import android.database.Cursor;
-import android.database.MatrixCursor;
 import android.os.Bundle;
 import android.sax.Element;
 import android.sax.ElementListener;
@@ -134,7 +134,7 @@ public class RssContentHandler extends XmlContentHandler {
 
     private final Element mItemElement;
 
-    protected final MatrixCursor mOutput;
+    protected final ColumnarCursor mOutput;
 
     protected final Bundle mExtras;
 
@@ -162,7 +162,7 @@ public class RssContentHandler extends XmlContentHandler {
      *            {@link Cursor#getExtras()}.
      * @throws NullPointerException if either argument is {@code null}
      */
-    public RssContentHandler(MatrixCursor out, Bundle extras) {
+    public RssContentHandler(ColumnarCursor out, Bundle extras) {
         if (out == null) {
             throw new NullPointerException();
         }
@@ -191,7 +191,7 @@ public class RssContentHandler extends XmlContentHandler {
              */
             public void end() {
                 if (endItem()) {
-                    MatrixCursor.RowBuilder builder = mOutput.newRow();
+                    ColumnarCursor.RowBuilder builder = mOutput.newRow();
                     int columnCount = mOutput.getColumnCount();
                     for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
                         String columnName = mOutput.getColumnName(columnIndex);
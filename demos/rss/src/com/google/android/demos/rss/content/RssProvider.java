@@ -17,6 +17,7 @@
 package com.google.android.demos.rss.content;
 
 import com.google.android.demos.rss.provider.RssContract.Items;
+import com.google.android.feeds.ColumnarCursor;
 import com.google.android.feeds.FeedLoader;
 import com.google.android.feeds.FeedProvider;
 
@@ -26,7 +27,6 @@ import android.content.Context;
 import android.content.UriMatcher;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
-import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Bundle;
 
@@ -77,7 +77,7 @@ public class RssProvider extends ContentProvider {
                     break;
             }
         }
-        MatrixCursor output = new MatrixCursor(projection);
+        ColumnarCursor output = new ColumnarCursor(projection);
         Bundle extras = new Bundle();
         try {
             RssContentHandler handler = new RssContentHandler(output, extras);
@@ -98,7 +98,9 @@ public abstract class AbstractCachedContentHandler extends ContentHandler {
             // Record the timestamp before starting the request
             // so the freshness of the content is not over-estimated.
             // Use the local system clock time for consistency.
-            long timestamp = now();
+            // A buffered connection was requested before it was handed over.
+            long timestamp = connection instanceof BufferedURLConnection
+                    ? ((BufferedURLConnection) connection).getFetchTime() : now();
 
             Object content = getRemoteContent(connection);
 
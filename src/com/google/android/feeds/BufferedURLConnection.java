@@ -0,0 +1,137 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link URLConnection} whose body has already been read into memory.
+ * <p>
+ * The headers are those of the original connection, and the body is still
+ * encoded as described by {@link #getContentEncoding()}, so a
+ * {@link java.net.ContentHandler} can parse it as if it were reading the
+ * original connection.
+ */
+class BufferedURLConnection extends URLConnection {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Reads the body of a connection.
+     *
+     * @param source the connection to read, which must not have been read yet.
+     * @return a connection that reads the body from memory.
+     * @throws IOException if the connection cannot be read.
+     */
+    public static BufferedURLConnection read(URLConnection source) throws IOException {
+        // Record the time before starting the request, like
+        // AbstractCachedContentHandler does for connections it reads itself
+        long fetchTime = System.currentTimeMillis();
+        InputStream input = source.getInputStream();
+        try {
+            int contentLength = source.getContentLength();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(
+                    contentLength > 0 ? contentLength : BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = input.read(buffer); n != -1; n = input.read(buffer)) {
+                output.write(buffer, 0, n);
+            }
+            return new BufferedURLConnection(source, output.toByteArray(), fetchTime);
+        } finally {
+            input.close();
+        }
+    }
+
+    private final URLConnection mSource;
+
+    private final byte[] mBody;
+
+    private final long mFetchTime;
+
+    private BufferedURLConnection(URLConnection source, byte[] body, long fetchTime) {
+        super(source.getURL());
+        mSource = source;
+        mBody = body;
+        mFetchTime = fetchTime;
+        connected = true;
+    }
+
+    /**
+     * Returns the connection that the body was read from.
+     */
+    public URLConnection getSource() {
+        return mSource;
+    }
+
+    /**
+     * Returns the time at which the request was started, in
+     * {@link System#currentTimeMillis()}.
+     */
+    public long getFetchTime() {
+        return mFetchTime;
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(mBody);
+    }
+
+    @Override
+    public int getContentLength() {
+        return mBody.length;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return mSource.getHeaderField(name);
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        return mSource.getHeaderField(n);
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        return mSource.getHeaderFieldKey(n);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return mSource.getHeaderFields();
+    }
+
+    @Override
+    public String getContentType() {
+        return mSource.getContentType();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return mSource.getContentEncoding();
+    }
+}
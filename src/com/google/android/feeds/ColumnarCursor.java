@@ -0,0 +1,739 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorIndexOutOfBoundsException;
+import android.database.MatrixCursor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A mutable {@link Cursor} that stores each column separately, as a drop-in
+ * replacement for {@link MatrixCursor} in feed providers.
+ * <p>
+ * Integer columns are stored as packed {@code long} values and floating-point
+ * columns as packed {@code double} values, without boxing. Short strings that
+ * repeat within a column (for example, an author or a category) share a single
+ * instance. Storage grows in fixed-size chunks, so adding rows never copies
+ * existing values.
+ * <p>
+ * The type of a column is the type of the first non-{@code null} value added
+ * to it, unless it is declared in the constructor. If an undeclared column
+ * later receives a value of another type, it falls back to storing objects
+ * like {@link MatrixCursor}. Values are converted when they are read, as they
+ * are by {@link MatrixCursor}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class ColumnarCursor extends AbstractCursor {
+
+    private static final int CHUNK_SHIFT = 6;
+
+    /**
+     * The number of rows in a chunk, which is also the number of bits in the
+     * {@code long} that marks the {@code null} values of a chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Strings up to this length are shared with equal strings in the same
+     * column.
+     */
+    private static final int MAX_SHARED_LENGTH = 32;
+
+    /**
+     * The maximum number of distinct strings shared in each column.
+     */
+    private static final int MAX_SHARED_COUNT = 256;
+
+    /**
+     * Returns the {@link Cursor} type of a value, as stored by
+     * {@link MatrixCursor}.
+     */
+    private static int getTypeOfObject(Object value) {
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        } else if (value instanceof Float || value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return FIELD_TYPE_INTEGER;
+        } else {
+            return FIELD_TYPE_STRING;
+        }
+    }
+
+    /**
+     * Storage for the values of a column.
+     */
+    private static abstract class Column {
+
+        /**
+         * Stores a value, or returns {@code false} if the column cannot store
+         * values of its type.
+         */
+        public abstract boolean set(int row, Object value);
+
+        public boolean setLong(int row, long value) {
+            return set(row, Long.valueOf(value));
+        }
+
+        public boolean setDouble(int row, double value) {
+            return set(row, Double.valueOf(value));
+        }
+
+        public abstract Object get(int row);
+
+        public int getType(int row) {
+            return getTypeOfObject(get(row));
+        }
+
+        public boolean isNull(int row) {
+            return get(row) == null;
+        }
+
+        public String getString(int row) {
+            Object value = get(row);
+            return value != null ? value.toString() : null;
+        }
+
+        public long getLong(int row) {
+            Object value = get(row);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue();
+            } else {
+                return Long.parseLong(value.toString());
+            }
+        }
+
+        public double getDouble(int row) {
+            Object value = get(row);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else {
+                return Double.parseDouble(value.toString());
+            }
+        }
+
+        public byte[] getBlob(int row) {
+            Object value = get(row);
+            return value instanceof byte[] ? (byte[]) value : null;
+        }
+    }
+
+    /**
+     * A column that has only received {@code null} values so far.
+     */
+    private static final class EmptyColumn extends Column {
+
+        static final EmptyColumn INSTANCE = new EmptyColumn();
+
+        @Override
+        public boolean set(int row, Object value) {
+            return value == null;
+        }
+
+        @Override
+        public Object get(int row) {
+            return null;
+        }
+    }
+
+    /**
+     * A column of primitive values, with one bit per row to mark {@code null}
+     * values.
+     */
+    private static abstract class PackedColumn extends Column {
+
+        /**
+         * The {@code null} bits of each chunk. Rows are {@code null} until a
+         * value is stored.
+         */
+        private long[] mNullMasks = new long[1];
+
+        private int mChunkCount;
+
+        /**
+         * Allocates the storage for the values of a new chunk.
+         */
+        protected abstract void addChunk();
+
+        /**
+         * Returns the index of the chunk of a row, allocating it if needed.
+         */
+        protected final int ensureChunk(int row) {
+            int chunk = row >>> CHUNK_SHIFT;
+            while (mChunkCount <= chunk) {
+                if (mChunkCount == mNullMasks.length) {
+                    long[] nullMasks = new long[mNullMasks.length * 2];
+                    System.arraycopy(mNullMasks, 0, nullMasks, 0, mChunkCount);
+                    mNullMasks = nullMasks;
+                }
+                mNullMasks[mChunkCount++] = -1L;
+                addChunk();
+            }
+            return chunk;
+        }
+
+        protected final void setNull(int row, boolean isNull) {
+            int chunk = ensureChunk(row);
+            long bit = 1L << (row & CHUNK_MASK);
+            if (isNull) {
+                mNullMasks[chunk] |= bit;
+            } else {
+                mNullMasks[chunk] &= ~bit;
+            }
+        }
+
+        @Override
+        public final boolean isNull(int row) {
+            int chunk = row >>> CHUNK_SHIFT;
+            return chunk >= mChunkCount || (mNullMasks[chunk] & (1L << (row & CHUNK_MASK))) != 0;
+        }
+    }
+
+    /**
+     * A column of {@code long} values.
+     */
+    private static final class LongColumn extends PackedColumn {
+
+        private final ArrayList<long[]> mChunks = new ArrayList<long[]>();
+
+        @Override
+        protected void addChunk() {
+            mChunks.add(new long[CHUNK_SIZE]);
+        }
+
+        @Override
+        public boolean set(int row, Object value) {
+            if (value == null) {
+                setNull(row, true);
+                return true;
+            } else if (getTypeOfObject(value) == FIELD_TYPE_INTEGER) {
+                return setLong(row, ((Number) value).longValue());
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean setLong(int row, long value) {
+            setNull(row, false);
+            mChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK] = value;
+            return true;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : Long.valueOf(getLong(row));
+        }
+
+        @Override
+        public int getType(int row) {
+            return isNull(row) ? FIELD_TYPE_NULL : FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        public long getLong(int row) {
+            return isNull(row) ? 0 : mChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return getLong(row);
+        }
+
+        @Override
+        public String getString(int row) {
+            return isNull(row) ? null : Long.toString(getLong(row));
+        }
+    }
+
+    /**
+     * A column of {@code double} values.
+     */
+    private static final class DoubleColumn extends PackedColumn {
+
+        private final ArrayList<double[]> mChunks = new ArrayList<double[]>();
+
+        @Override
+        protected void addChunk() {
+            mChunks.add(new double[CHUNK_SIZE]);
+        }
+
+        @Override
+        public boolean set(int row, Object value) {
+            if (value == null) {
+                setNull(row, true);
+                return true;
+            } else if (getTypeOfObject(value) == FIELD_TYPE_FLOAT) {
+                return setDouble(row, ((Number) value).doubleValue());
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean setLong(int row, long value) {
+            return false;
+        }
+
+        @Override
+        public boolean setDouble(int row, double value) {
+            setNull(row, false);
+            mChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK] = value;
+            return true;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : Double.valueOf(getDouble(row));
+        }
+
+        @Override
+        public int getType(int row) {
+            return isNull(row) ? FIELD_TYPE_NULL : FIELD_TYPE_FLOAT;
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return isNull(row) ? 0 : mChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+        }
+
+        @Override
+        public long getLong(int row) {
+            return (long) getDouble(row);
+        }
+    }
+
+    /**
+     * A column of objects. Strings are shared with equal strings in the
+     * column when they are short, and {@link #isStringColumn() string
+     * columns} accept any value except numbers and blobs.
+     */
+    private static final class ObjectColumn extends Column {
+
+        private final boolean mStrings;
+
+        private final ArrayList<Object[]> mChunks = new ArrayList<Object[]>();
+
+        private HashMap<String, String> mShared;
+
+        /**
+         * @param strings {@code true} to only accept values stored as strings,
+         *            {@code false} to accept any value.
+         */
+        public ObjectColumn(boolean strings) {
+            mStrings = strings;
+        }
+
+        public boolean isStringColumn() {
+            return mStrings;
+        }
+
+        private String share(String value) {
+            if (value.length() > MAX_SHARED_LENGTH) {
+                return value;
+            }
+            if (mShared == null) {
+                mShared = new HashMap<String, String>();
+            }
+            String shared = mShared.get(value);
+            if (shared != null) {
+                return shared;
+            }
+            if (mShared.size() < MAX_SHARED_COUNT) {
+                mShared.put(value, value);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean set(int row, Object value) {
+            int type = getTypeOfObject(value);
+            if (type == FIELD_TYPE_STRING) {
+                // Store other objects as strings, since that is how they are
+                // read; this also avoids holding on to large objects
+                value = share(value.toString());
+            } else if (mStrings && type != FIELD_TYPE_NULL) {
+                return false;
+            }
+            int chunk = row >>> CHUNK_SHIFT;
+            while (mChunks.size() <= chunk) {
+                mChunks.add(new Object[CHUNK_SIZE]);
+            }
+            mChunks.get(chunk)[row & CHUNK_MASK] = value;
+            return true;
+        }
+
+        @Override
+        public Object get(int row) {
+            int chunk = row >>> CHUNK_SHIFT;
+            return chunk < mChunks.size() ? mChunks.get(chunk)[row & CHUNK_MASK] : null;
+        }
+    }
+
+    /**
+     * Creates the storage for a column declared with a {@link Cursor} type.
+     */
+    private static Column createColumn(int type) {
+        switch (type) {
+            case FIELD_TYPE_NULL:
+                return EmptyColumn.INSTANCE;
+            case FIELD_TYPE_INTEGER:
+                return new LongColumn();
+            case FIELD_TYPE_FLOAT:
+                return new DoubleColumn();
+            case FIELD_TYPE_STRING:
+                return new ObjectColumn(true);
+            case FIELD_TYPE_BLOB:
+                return new ObjectColumn(false);
+            default:
+                throw new IllegalArgumentException("Unknown column type: " + type);
+        }
+    }
+
+    /**
+     * Builds a row, starting from the first column. Columns that are not set
+     * are {@code null}.
+     */
+    public class RowBuilder {
+
+        private final int mRow;
+
+        private int mColumn;
+
+        RowBuilder(int row) {
+            mRow = row;
+        }
+
+        /**
+         * Sets the next column value in this row.
+         *
+         * @throws CursorIndexOutOfBoundsException if you try to add too many
+         *             values.
+         */
+        public RowBuilder add(Object value) {
+            set(nextColumn(), value);
+            return this;
+        }
+
+        /**
+         * Sets the next column value in this row without boxing it.
+         */
+        public RowBuilder add(long value) {
+            set(nextColumn(), value);
+            return this;
+        }
+
+        /**
+         * Sets the next column value in this row without boxing it.
+         */
+        public RowBuilder add(double value) {
+            set(nextColumn(), value);
+            return this;
+        }
+
+        /**
+         * Sets the value of a column by name, and continues from the column
+         * after it. Has no effect if there is no such column, so that a
+         * handler can offer every column it knows about and only those in
+         * the projection are stored.
+         */
+        public RowBuilder set(String columnName, Object value) {
+            Integer column = mColumnIndexes.get(columnName);
+            if (column != null) {
+                set(column.intValue(), value);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the value of a column, and continues from the column after it.
+         */
+        public RowBuilder set(int column, Object value) {
+            setValue(mRow, checkColumn(column), value);
+            mColumn = column + 1;
+            return this;
+        }
+
+        /**
+         * Sets the value of a column without boxing it, and continues from the
+         * column after it.
+         */
+        public RowBuilder set(int column, long value) {
+            setLong(mRow, checkColumn(column), value);
+            mColumn = column + 1;
+            return this;
+        }
+
+        /**
+         * Sets the value of a column without boxing it, and continues from the
+         * column after it.
+         */
+        public RowBuilder set(int column, double value) {
+            setDouble(mRow, checkColumn(column), value);
+            mColumn = column + 1;
+            return this;
+        }
+
+        private int nextColumn() {
+            if (mColumn == mColumns.length) {
+                throw new CursorIndexOutOfBoundsException("No more columns left.");
+            }
+            return mColumn;
+        }
+    }
+
+    private final String[] mColumnNames;
+
+    private final HashMap<String, Integer> mColumnIndexes;
+
+    private final Column[] mColumns;
+
+    /**
+     * {@code true} for columns whose type was not declared.
+     */
+    private final boolean[] mAdaptive;
+
+    private int mRowCount;
+
+    /**
+     * Constructs a cursor whose column types are determined by the values
+     * added.
+     *
+     * @param columnNames names of the columns, the ordering of which
+     *            determines column ordering elsewhere in this cursor.
+     */
+    public ColumnarCursor(String[] columnNames) {
+        this(columnNames, null);
+    }
+
+    /**
+     * Constructs a cursor with declared column types. Values added to a
+     * declared column must have its type, or be {@code null}, except that
+     * integers added to a {@link Cursor#FIELD_TYPE_FLOAT} column are stored as
+     * {@code double} values.
+     *
+     * @param columnNames names of the columns, the ordering of which
+     *            determines column ordering elsewhere in this cursor.
+     * @param columnTypes the type of each column, such as
+     *            {@link Cursor#FIELD_TYPE_INTEGER}, or
+     *            {@link Cursor#FIELD_TYPE_NULL} to determine the type from the
+     *            values added. {@link Cursor#FIELD_TYPE_BLOB} columns accept
+     *            any value. May be {@code null} to declare no types.
+     */
+    public ColumnarCursor(String[] columnNames, int[] columnTypes) {
+        if (columnNames == null) {
+            throw new NullPointerException("Column names are null");
+        }
+        if (columnTypes != null && columnTypes.length != columnNames.length) {
+            throw new IllegalArgumentException("Expected " + columnNames.length
+                    + " column types but got " + columnTypes.length);
+        }
+        int columnCount = columnNames.length;
+        mColumnNames = columnNames;
+        mColumnIndexes = new HashMap<String, Integer>(columnCount * 2);
+        mColumns = new Column[columnCount];
+        mAdaptive = new boolean[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            mColumnIndexes.put(columnNames[column], Integer.valueOf(column));
+            int type = columnTypes != null ? columnTypes[column] : FIELD_TYPE_NULL;
+            mColumns[column] = createColumn(type);
+            mAdaptive[column] = type == FIELD_TYPE_NULL;
+        }
+    }
+
+    /**
+     * Adds a new row to the end and returns a builder for that row.
+     *
+     * @return a builder which can be used to set the column values for the
+     *         new row.
+     */
+    public RowBuilder newRow() {
+        return new RowBuilder(mRowCount++);
+    }
+
+    /**
+     * Adds a new row to the end with the given column values.
+     *
+     * @param columnValues in the same order as the column names specified
+     *            in the constructor.
+     * @throws IllegalArgumentException if {@code columnValues.length !=
+     *             columnNames.length}
+     */
+    public void addRow(Object[] columnValues) {
+        if (columnValues.length != mColumns.length) {
+            throw new IllegalArgumentException("columnNames.length = " + mColumns.length
+                    + ", columnValues.length = " + columnValues.length);
+        }
+        int row = mRowCount++;
+        for (int column = 0; column < columnValues.length; column++) {
+            setValue(row, column, columnValues[column]);
+        }
+    }
+
+    private int checkColumn(int column) {
+        if (column < 0 || column >= mColumns.length) {
+            throw new CursorIndexOutOfBoundsException("Requested column: " + column
+                    + ", # of columns: " + mColumns.length);
+        }
+        return column;
+    }
+
+    private void setValue(int row, int column, Object value) {
+        if (!mColumns[column].set(row, value)) {
+            int type = getTypeOfObject(value);
+            if (type != FIELD_TYPE_INTEGER || !widen(row, column, ((Number) value).longValue())) {
+                adapt(row, column, type).set(row, value);
+            }
+        }
+    }
+
+    private void setLong(int row, int column, long value) {
+        if (!mColumns[column].setLong(row, value) && !widen(row, column, value)) {
+            adapt(row, column, FIELD_TYPE_INTEGER).setLong(row, value);
+        }
+    }
+
+    /**
+     * Stores an integer in a column declared as {@link Cursor#FIELD_TYPE_FLOAT}.
+     * Undeclared columns are not widened, so that they report the type of
+     * each value like {@link MatrixCursor}.
+     *
+     * @return {@code false} if the column is not a declared floating-point
+     *         column.
+     */
+    private boolean widen(int row, int column, long value) {
+        Column current = mColumns[column];
+        return !mAdaptive[column] && current instanceof DoubleColumn
+                && current.setDouble(row, value);
+    }
+
+    private void setDouble(int row, int column, double value) {
+        if (!mColumns[column].setDouble(row, value)) {
+            adapt(row, column, FIELD_TYPE_FLOAT).setDouble(row, value);
+        }
+    }
+
+    /**
+     * Replaces the storage of a column that cannot store a value of the given
+     * type.
+     *
+     * @return the new storage.
+     */
+    private Column adapt(int row, int column, int type) {
+        Column current = mColumns[column];
+        if (!mAdaptive[column]) {
+            throw new IllegalArgumentException("Column " + mColumnNames[column]
+                    + " cannot store a value of type " + type);
+        }
+        Column adapted;
+        if (current == EmptyColumn.INSTANCE) {
+            // The first value determines the type of the column
+            adapted = createColumn(type);
+        } else {
+            // Mixed types are stored as objects, which is the most general
+            adapted = new ObjectColumn(false);
+            for (int i = 0; i < mRowCount; i++) {
+                if (i != row) {
+                    adapted.set(i, current.get(i));
+                }
+            }
+        }
+        mColumns[column] = adapted;
+        return adapted;
+    }
+
+    private Column get(int column) {
+        checkColumn(column);
+        checkPosition();
+        return mColumns[column];
+    }
+
+    @Override
+    public int getCount() {
+        return mRowCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        Integer column = mColumnIndexes.get(columnName);
+        return column != null ? column.intValue() : super.getColumnIndex(columnName);
+    }
+
+    @Override
+    public int getType(int column) {
+        return get(column).getType(mPos);
+    }
+
+    @Override
+    public String getString(int column) {
+        return get(column).getString(mPos);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) get(column).getLong(mPos);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) get(column).getLong(mPos);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return get(column).getLong(mPos);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) get(column).getDouble(mPos);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return get(column).getDouble(mPos);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return get(column).getBlob(mPos);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return get(column).isNull(mPos);
+    }
+}
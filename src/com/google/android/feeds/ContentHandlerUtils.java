@@ -57,6 +57,9 @@ public final class ContentHandlerUtils {
                 }
             }
         }
+        if (connection instanceof BufferedURLConnection) {
+            connection = ((BufferedURLConnection) connection).getSource();
+        }
         if (connection instanceof HttpURLConnection) {
             return HTTP.DEFAULT_CONTENT_CHARSET;
         } else {
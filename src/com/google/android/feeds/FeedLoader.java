@@ -22,9 +22,17 @@ import android.net.Uri;
 import android.os.Bundle;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ContentHandler;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Loads feed content from one or more documents to satisfy a query.
@@ -71,10 +79,109 @@ public class FeedLoader {
         }
     }
 
-    private static DocumentInfo loadDocument(ContentHandler handler, Uri uri) throws IOException {
+    /**
+     * Returns the URIs of consecutive pages of a feed.
+     */
+    private interface PageSequence {
+        /**
+         * Returns the URI of a page.
+         *
+         * @param ordinal the position of the page, starting at {@code 0}.
+         */
+        Uri getPageUri(int ordinal);
+    }
+
+    /**
+     * Starts fetching the next document of a continued feed as soon as the
+     * handler parsing the current document reports its continuation token.
+     */
+    private static class Prefetch {
+
+        private final ExecutorService mExecutor;
+
+        private final ContentHandler mHandler;
+
+        private final URLConnection mConnection;
+
+        private final Uri mBaseDocumentUri;
+
+        private final String mContinuationParameter;
+
+        private String mContinuationToken;
+
+        private Future<URLConnection> mNext;
+
+        public Prefetch(ExecutorService executor, ContentHandler handler,
+                URLConnection connection, Uri baseDocumentUri, String continuationParameter) {
+            mExecutor = executor;
+            mHandler = handler;
+            mConnection = connection;
+            mBaseDocumentUri = baseDocumentUri;
+            mContinuationParameter = continuationParameter;
+        }
+
+        public URLConnection getConnection() {
+            return mConnection;
+        }
+
+        /**
+         * Starts fetching the document for a continuation token, unless a
+         * token has already been reported.
+         */
+        public void start(String continuationToken) throws IOException {
+            if (mNext == null && continuationToken != null) {
+                mContinuationToken = continuationToken;
+                mNext = fetchPage(mExecutor, mHandler, getDocumentUri(continuationToken));
+            }
+        }
+
+        /**
+         * Returns the connection for the document after the current one,
+         * fetching it now if it was not started early or the token reported
+         * early does not match the one in the document info.
+         */
+        public URLConnection next(String continuationToken) throws IOException {
+            if (mNext != null && continuationToken.equals(mContinuationToken)) {
+                Future<URLConnection> next = mNext;
+                mNext = null;
+                return getPage(next);
+            }
+            cancel();
+            return openConnection(getDocumentUri(continuationToken));
+        }
+
+        public void cancel() {
+            if (mNext != null) {
+                mNext.cancel(true);
+                mNext = null;
+            }
+        }
+
+        private Uri getDocumentUri(String continuationToken) {
+            Uri.Builder documentUri = mBaseDocumentUri.buildUpon();
+            documentUri.appendQueryParameter(mContinuationParameter, continuationToken);
+            return documentUri.build();
+        }
+    }
+
+    /**
+     * The {@link Prefetch} for the document being parsed on the current thread
+     * by {@link #loadPipelinedFeed(ContentHandler, Uri, String, int, Bundle)}.
+     */
+    private static final ThreadLocal<Prefetch> sPrefetch = new ThreadLocal<Prefetch>();
+
+    private static URLConnection openConnection(Uri uri) throws IOException {
         String spec = uri.toString();
         URL url = new URL(spec);
-        URLConnection connection = url.openConnection();
+        return url.openConnection();
+    }
+
+    private static DocumentInfo loadDocument(ContentHandler handler, Uri uri) throws IOException {
+        return loadDocument(handler, openConnection(uri));
+    }
+
+    private static DocumentInfo loadDocument(ContentHandler handler, URLConnection connection)
+            throws IOException {
         Object content = handler.getContent(connection);
         if (content instanceof DocumentInfo) {
             return (DocumentInfo) content;
@@ -134,6 +241,42 @@ public class FeedLoader {
     public static void loadIndexedFeed(ContentHandler handler, Uri baseDocumentUri,
             String indexParameter, int firstIndex, int pageSize, int itemCount, Bundle extras)
             throws IOException {
+        loadIndexedFeed(handler, baseDocumentUri, indexParameter, firstIndex, pageSize,
+                itemCount, extras, 1);
+    }
+
+    /**
+     * Loads a feed that is spread across multiple pages, where a page is
+     * selected by specifying the index of the first element that should appear
+     * on the page, fetching several pages at the same time.
+     * <p>
+     * The index of each page is computed in advance assuming that every page
+     * is full, so the server must return exactly {@code pageSize} items on
+     * every page but the last. Otherwise, pass {@code 1} for
+     * {@code maxConcurrentPages} to compute each index from the number of
+     * items actually received.
+     *
+     * @param maxConcurrentPages the maximum number of pages to fetch at the
+     *            same time. Pages are still passed to the handler one at a
+     *            time, in order, on the calling thread (see
+     *            {@link #loadPagedFeed(ContentHandler, Uri, String, int, int, int, Bundle, int)}
+     *            ).
+     * @see #loadIndexedFeed(ContentHandler, Uri, String, int, int, int, Bundle)
+     */
+    public static void loadIndexedFeed(ContentHandler handler, final Uri baseDocumentUri,
+            final String indexParameter, final int firstIndex, final int pageSize,
+            int itemCount, Bundle extras, int maxConcurrentPages) throws IOException {
+        if (maxConcurrentPages > 1) {
+            loadPages(handler, new PageSequence() {
+                public Uri getPageUri(int ordinal) {
+                    Uri.Builder documentUri = baseDocumentUri.buildUpon();
+                    int index = firstIndex + ordinal * pageSize;
+                    documentUri.appendQueryParameter(indexParameter, Integer.toString(index));
+                    return documentUri.build();
+                }
+            }, pageSize, itemCount, extras, maxConcurrentPages);
+            return;
+        }
         int totalCount = 0;
         int index = firstIndex;
         boolean hasMore;
@@ -191,6 +334,42 @@ public class FeedLoader {
     public static void loadPagedFeed(ContentHandler handler, Uri baseDocumentUri,
             String pageParameter, int firstPage, int pageSize, int itemCount, Bundle extras)
             throws IOException {
+        loadPagedFeed(handler, baseDocumentUri, pageParameter, firstPage, pageSize, itemCount,
+                extras, 1);
+    }
+
+    /**
+     * Loads a feed that is spread across multiple pages, where a page is
+     * selected by specifying the page number, fetching several pages at the
+     * same time.
+     * <p>
+     * The body of each page is read into memory by a background thread, and
+     * the pages are passed to the handler one at a time, in order, on the
+     * calling thread, so the handler does not need to be thread-safe. No more
+     * pages are requested once a page has fewer than {@code pageSize} items;
+     * pages that were already requested after it are discarded.
+     * <p>
+     * If the handler is an {@link AbstractCachedContentHandler} with fresh
+     * cached content for a page, that page is not fetched.
+     *
+     * @param maxConcurrentPages the maximum number of pages to fetch at the
+     *            same time, or {@code 1} to fetch one page after another.
+     * @see #loadPagedFeed(ContentHandler, Uri, String, int, int, int, Bundle)
+     */
+    public static void loadPagedFeed(ContentHandler handler, final Uri baseDocumentUri,
+            final String pageParameter, final int firstPage, int pageSize, int itemCount,
+            Bundle extras, int maxConcurrentPages) throws IOException {
+        if (maxConcurrentPages > 1) {
+            loadPages(handler, new PageSequence() {
+                public Uri getPageUri(int ordinal) {
+                    Uri.Builder documentUri = baseDocumentUri.buildUpon();
+                    int page = firstPage + ordinal;
+                    documentUri.appendQueryParameter(pageParameter, Integer.toString(page));
+                    return documentUri.build();
+                }
+            }, pageSize, itemCount, extras, maxConcurrentPages);
+            return;
+        }
         int totalCount = 0;
         int page = firstPage;
 
@@ -216,6 +395,104 @@ public class FeedLoader {
         } while (totalCount < itemCount && morePages);
     }
 
+    /**
+     * Fetches up to {@code maxConcurrentPages} pages ahead of the page being
+     * parsed.
+     */
+    private static void loadPages(ContentHandler handler, PageSequence pages, int pageSize,
+            int itemCount, Bundle extras, int maxConcurrentPages) throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        // Computed in long arithmetic because itemCount may be Integer.MAX_VALUE
+        long pageCount = Math.max(1L, ((long) itemCount + pageSize - 1) / pageSize);
+        ExecutorService executor = Executors.newFixedThreadPool((int) Math.min(
+                maxConcurrentPages, pageCount));
+        LinkedList<Future<URLConnection>> pending = new LinkedList<Future<URLConnection>>();
+        try {
+            int ordinal = 0;
+            int totalCount = 0;
+            boolean morePages;
+            do {
+                // Keep enough pages in flight to reach the item count,
+                // assuming that they are full
+                while (pending.size() < maxConcurrentPages
+                        && (totalCount + (long) pending.size() * pageSize < itemCount
+                                || pending.isEmpty())) {
+                    pending.add(fetchPage(executor, handler, pages.getPageUri(ordinal++)));
+                }
+
+                DocumentInfo document = loadDocument(handler, getPage(pending.removeFirst()));
+
+                int documentItemCount = document.itemCount();
+                if (documentItemCount < 0) {
+                    throw new RuntimeException(
+                            "Invalid document info: item count is unset or invalid");
+                }
+
+                // If the page is full, there are probably more pages
+                morePages = documentItemCount >= pageSize;
+                extras.putBoolean(FeedExtras.EXTRA_MORE, morePages);
+
+                totalCount += documentItemCount;
+            } while (totalCount < itemCount && morePages);
+        } finally {
+            for (Future<URLConnection> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts reading a page in the background, unless the handler has fresh
+     * cached content for it.
+     */
+    private static Future<URLConnection> fetchPage(ExecutorService executor,
+            ContentHandler handler, Uri uri) throws IOException {
+        final URLConnection connection = openConnection(uri);
+        if (handler instanceof AbstractCachedContentHandler
+                && ((AbstractCachedContentHandler) handler).isLocal(connection)) {
+            FutureTask<URLConnection> task = new FutureTask<URLConnection>(
+                    new Callable<URLConnection>() {
+                        public URLConnection call() {
+                            return connection;
+                        }
+                    });
+            task.run();
+            return task;
+        }
+        return executor.submit(new Callable<URLConnection>() {
+            public URLConnection call() throws IOException {
+                return BufferedURLConnection.read(connection);
+            }
+        });
+    }
+
+    /**
+     * Waits for a page to be read, re-throwing any exception thrown while
+     * reading it.
+     */
+    private static URLConnection getPage(Future<URLConnection> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
     /**
      * Loads a feed using continuation tokens. For example:
      * <ul>
@@ -258,6 +535,92 @@ public class FeedLoader {
         } while (totalCount < itemCount && continuation != null);
     }
 
+    /**
+     * Loads a feed using continuation tokens, like
+     * {@link #loadContinuedFeed(ContentHandler, Uri, String, int, Bundle)},
+     * but starts fetching the next document while the current document is
+     * still being parsed.
+     * <p>
+     * The handler should call
+     * {@link #continuationToken(URLConnection, String)} as soon as it has
+     * parsed the continuation token, which is often near the top of the
+     * document, and must still return it in
+     * {@link FeedLoader#documentInfo(int, String)}. The next document is read
+     * into memory by a background thread; documents are passed to the handler
+     * one at a time, on the calling thread. If the handler does not report the
+     * token early, documents are loaded one after another.
+     * <p>
+     * The next document is requested before the item count of the current
+     * document is known, so one document more than needed may be fetched.
+     *
+     * @see #loadContinuedFeed(ContentHandler, Uri, String, int, Bundle)
+     */
+    public static void loadPipelinedFeed(ContentHandler handler, Uri baseDocumentUri,
+            String continuationParameter, int itemCount, Bundle extras) throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Prefetch prefetch = null;
+        try {
+            URLConnection connection = openConnection(baseDocumentUri);
+            int totalCount = 0;
+            String continuation = null;
+            do {
+                if (continuation != null) {
+                    connection = prefetch.next(continuation);
+                }
+                prefetch = new Prefetch(executor, handler, connection, baseDocumentUri,
+                        continuationParameter);
+                DocumentInfo document;
+                sPrefetch.set(prefetch);
+                try {
+                    document = loadDocument(handler, connection);
+                } finally {
+                    sPrefetch.remove();
+                }
+
+                continuation = document.continuationToken();
+                extras.putBoolean(FeedExtras.EXTRA_MORE, continuation != null);
+
+                int documentItemCount = document.itemCount();
+                if (documentItemCount < 0) {
+                    throw new RuntimeException(
+                            "Invalid document info: item count is unset or invalid");
+                }
+                totalCount += documentItemCount;
+            } while (totalCount < itemCount && continuation != null);
+        } finally {
+            if (prefetch != null) {
+                prefetch.cancel();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reports the continuation token of a document before it has been parsed
+     * completely, so that
+     * {@link #loadPipelinedFeed(ContentHandler, Uri, String, int, Bundle)}
+     * can start fetching the next document.
+     * <p>
+     * This method must be called from
+     * {@link ContentHandler#getContent(URLConnection)}. It has no effect if
+     * the document is not being loaded by
+     * {@link #loadPipelinedFeed(ContentHandler, Uri, String, int, Bundle)}, if
+     * the token is {@code null}, or if a token has already been reported for
+     * the document.
+     *
+     * @param connection the connection passed to
+     *            {@link ContentHandler#getContent(URLConnection)}.
+     * @param continuationToken the continuation token of the document.
+     * @throws IOException if the next document cannot be requested.
+     */
+    public static void continuationToken(URLConnection connection, String continuationToken)
+            throws IOException {
+        Prefetch prefetch = sPrefetch.get();
+        if (prefetch != null && prefetch.getConnection() == connection) {
+            prefetch.start(continuationToken);
+        }
+    }
+
     /**
      * Returns an empty document info object.
      * <p>
@@ -299,7 +662,8 @@ public class FeedLoader {
      * <p>
      * This type of document info object should be returned by
      * {@link ContentHandler ContentHandlers} passed to
-     * {@link #loadContinuedFeed(ContentHandler, Uri, String, int, Bundle)}.
+     * {@link #loadContinuedFeed(ContentHandler, Uri, String, int, Bundle)}
+     * and {@link #loadPipelinedFeed(ContentHandler, Uri, String, int, Bundle)}.
      *
      * @param itemCount the number of rows added to a {@link MatrixCursor} or
      *            {@link SQLiteDatabase} by the last call to
@@ -0,0 +1,351 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import android.content.ContentProvider;
+import android.database.AbstractCursor;
+import android.database.AbstractWindowedCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.net.ContentHandler;
+import java.net.URLConnection;
+import java.util.ArrayList;
+
+/**
+ * A {@link Cursor} that can be returned after the first page of a feed has
+ * been loaded, and grows as later pages are loaded in the background.
+ * <p>
+ * The rows are copied from a source {@link Cursor}, typically the
+ * {@link MatrixCursor} that the {@link ContentHandler} writes to, each time a
+ * page has been parsed. For example, in
+ * {@link ContentProvider#query(android.net.Uri, String[], String, String[], String)}:
+ *
+ * <pre>
+ * FeedLoader.loadPagedFeed(handler, uri, &quot;page&quot;, 1, pageSize, pageSize, extras);
+ * final IncrementalCursor cursor = new IncrementalCursor(output, extras);
+ * executor.execute(new Runnable() {
+ *     public void run() {
+ *         try {
+ *             ContentHandler publishing = cursor.publishing(handler);
+ *             FeedLoader.loadPagedFeed(publishing, uri, &quot;page&quot;, 2, pageSize,
+ *                     itemCount - pageSize, extras);
+ *         } catch (Throwable t) {
+ *             extras.putSerializable(FeedExtras.EXTRA_ERROR, t);
+ *         } finally {
+ *             cursor.finish();
+ *         }
+ *     }
+ * });
+ * return cursor;
+ * </pre>
+ * <p>
+ * New rows become visible on the main thread, followed by a call to
+ * {@link DataSetObserver#onChanged()}, so that a {@link android.widget.ListView}
+ * never sees the count change without a notification.
+ * {@link ContentObserver ContentObservers} are not notified, because they
+ * would re-run the query and start loading the feed again. While pages are
+ * still being loaded, {@link FeedExtras#EXTRA_MORE} is {@code true} so that
+ * {@link ContentDecorator} shows the loading footer.
+ * <p>
+ * Only clients in the same process see the cursor grow.
+ * <p>
+ * Before Android 3.0 (API level 11), the type of a value cannot be read from
+ * most cursors, so values are copied as strings, except from a
+ * {@link ColumnarCursor} and from the blob columns of an
+ * {@link AbstractWindowedCursor}. Blob columns of other sources, such as a
+ * {@link MatrixCursor}, are not supported on those versions.
+ */
+public class IncrementalCursor extends AbstractCursor {
+
+    private static final int SDK = Integer.parseInt(Build.VERSION.SDK);
+
+    private static final Object[] EMPTY_ROW = {};
+
+    private final Cursor mSource;
+
+    private final Bundle mSourceExtras;
+
+    private final String[] mColumnNames;
+
+    private final Handler mHandler;
+
+    private final DataSetObservable mGrowthObservable;
+
+    /**
+     * The number of source rows that have been copied, accessed only by the
+     * loading thread.
+     */
+    private int mCopiedCount;
+
+    /**
+     * The visible rows, accessed only by the main thread after construction.
+     */
+    private final ArrayList<Object[]> mRows;
+
+    private Bundle mExtras;
+
+    /**
+     * Constructs an {@link IncrementalCursor} containing the rows already in
+     * the source.
+     *
+     * @param source the {@link Cursor} that the {@link ContentHandler} adds
+     *            rows to. It is only read by {@link #publish()}.
+     * @param extras the {@link Bundle} that the feed is loaded with, which
+     *            receives {@link FeedExtras#EXTRA_MORE} and
+     *            {@link FeedExtras#EXTRA_ERROR}.
+     */
+    public IncrementalCursor(Cursor source, Bundle extras) {
+        if (source == null) {
+            throw new NullPointerException("Cursor is null");
+        }
+        if (extras == null) {
+            throw new NullPointerException("Extras are null");
+        }
+        mSource = source;
+        mSourceExtras = extras;
+        mColumnNames = source.getColumnNames();
+        mHandler = new Handler(Looper.getMainLooper());
+        mGrowthObservable = new DataSetObservable();
+        mRows = new ArrayList<Object[]>();
+        mRows.addAll(copyRows());
+        mExtras = loadingExtras();
+    }
+
+    /**
+     * Copies the rows added to the source since the last call.
+     */
+    private ArrayList<Object[]> copyRows() {
+        int count = mSource.getCount();
+        ArrayList<Object[]> rows = new ArrayList<Object[]>(Math.max(0, count - mCopiedCount));
+        int columnCount = mColumnNames.length;
+        for (int position = mCopiedCount; position < count; position++) {
+            if (!mSource.moveToPosition(position)) {
+                break;
+            }
+            Object[] row = columnCount != 0 ? new Object[columnCount] : EMPTY_ROW;
+            for (int column = 0; column < columnCount; column++) {
+                row[column] = getValue(mSource, column);
+            }
+            rows.add(row);
+        }
+        mCopiedCount += rows.size();
+        return rows;
+    }
+
+    private static Object getValue(Cursor cursor, int column) {
+        int type;
+        if (cursor instanceof ColumnarCursor) {
+            type = ((ColumnarCursor) cursor).getType(column);
+        } else if (SDK >= 11) {
+            type = cursor.getType(column);
+        } else if (cursor instanceof AbstractWindowedCursor
+                && ((AbstractWindowedCursor) cursor).isBlob(column)) {
+            // Also true for null values, which getBlob(int) returns as null
+            type = FIELD_TYPE_BLOB;
+        } else {
+            // Cursor#getType(int) is not available, so copy the value the way
+            // most callers read it
+            type = FIELD_TYPE_STRING;
+        }
+        switch (type) {
+            case FIELD_TYPE_NULL:
+                return null;
+            case FIELD_TYPE_INTEGER:
+                return Long.valueOf(cursor.getLong(column));
+            case FIELD_TYPE_FLOAT:
+                return Double.valueOf(cursor.getDouble(column));
+            case FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return cursor.getString(column);
+        }
+    }
+
+    private Bundle loadingExtras() {
+        Bundle extras = new Bundle(mSourceExtras);
+        extras.putBoolean(FeedExtras.EXTRA_MORE, true);
+        return extras;
+    }
+
+    /**
+     * Makes the rows added to the source since the last call visible.
+     * <p>
+     * This method must be called on the thread that adds rows to the source,
+     * while no rows are being added.
+     */
+    public void publish() {
+        post(copyRows(), loadingExtras());
+    }
+
+    /**
+     * Makes the remaining rows visible together with the final extras, such
+     * as {@link FeedExtras#EXTRA_MORE} and {@link FeedExtras#EXTRA_ERROR}.
+     * <p>
+     * This method must be called on the thread that adds rows to the source,
+     * once the feed has been loaded or loading has failed.
+     */
+    public void finish() {
+        post(copyRows(), new Bundle(mSourceExtras));
+    }
+
+    private void post(final ArrayList<Object[]> rows, final Bundle extras) {
+        mHandler.post(new Runnable() {
+            public void run() {
+                mRows.addAll(rows);
+                mExtras = extras;
+                if (!isClosed()) {
+                    mGrowthObservable.notifyChanged();
+                }
+            }
+        });
+    }
+
+    /**
+     * Decorates a {@link ContentHandler} to call {@link #publish()} after
+     * each document has been parsed.
+     */
+    public ContentHandler publishing(final ContentHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException("ContentHandler is null");
+        }
+        return new ContentHandler() {
+            @Override
+            public Object getContent(URLConnection connection) throws IOException {
+                Object content = handler.getContent(connection);
+                publish();
+                return content;
+            }
+        };
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        super.registerDataSetObserver(observer);
+        mGrowthObservable.registerObserver(observer);
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        super.unregisterDataSetObserver(observer);
+        mGrowthObservable.unregisterObserver(observer);
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return mExtras;
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    private Object get(int column) {
+        if (column < 0 || column >= mColumnNames.length) {
+            throw new IndexOutOfBoundsException("Requested column: " + column
+                    + ", # of columns: " + mColumnNames.length);
+        }
+        checkPosition();
+        return mRows.get(mPos)[column];
+    }
+
+    @Override
+    public int getType(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        } else if (value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        } else if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        } else {
+            return FIELD_TYPE_STRING;
+        }
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = get(column);
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else {
+            return Long.parseLong(value.toString());
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else {
+            return Double.parseDouble(value.toString());
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        Object value = get(column);
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return get(column) == null;
+    }
+}
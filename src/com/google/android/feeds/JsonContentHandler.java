@@ -26,6 +26,9 @@ import java.net.URLConnection;
 
 /**
  * A {@link ContentHandler} for reading data in JSON format.
+ * <p>
+ * The whole body is read into memory before it is parsed. For large
+ * documents, use {@link JsonStreamContentHandler} instead.
  */
 public abstract class JsonContentHandler extends ContentHandler {
 
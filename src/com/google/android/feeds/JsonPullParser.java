@@ -0,0 +1,559 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a JSON document one token at a time.
+ * <p>
+ * Only the current token is held in memory, so documents of any size can be
+ * read with a small, fixed amount of memory. Objects are read with
+ * {@link #beginObject()}, then {@link #nextName()} and a value for each
+ * member while {@link #hasNext()}, then {@link #endObject()}; arrays are read
+ * the same way with {@link #beginArray()} and {@link #endArray()}. Values that
+ * are not needed can be skipped with {@link #skipValue()}.
+ * <p>
+ * Malformed documents, and tokens other than the one expected by the method
+ * called, cause an {@link IOException}, because the document comes from
+ * outside the application. This class is not thread-safe.
+ */
+public final class JsonPullParser {
+
+    /**
+     * The kinds of tokens in a JSON document.
+     */
+    public static enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final String TRUE = "true";
+
+    private static final String FALSE = "false";
+
+    // Scopes of the values being read
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader mReader;
+
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+
+    private int mPosition;
+
+    private int mLimit;
+
+    /**
+     * The offset in the document of the start of the buffer.
+     */
+    private int mBufferOffset;
+
+    private int[] mScopes = new int[16];
+
+    private int mDepth;
+
+    /**
+     * The next token, or {@code null} if it has not been read yet.
+     */
+    private Token mToken;
+
+    /**
+     * The text of the next token if it is a name, string, number or boolean.
+     */
+    private String mValue;
+
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    /**
+     * Constructor.
+     *
+     * @param reader the source of the document. It is read in blocks, so it
+     *            does not need to be buffered.
+     */
+    public JsonPullParser(Reader reader) {
+        if (reader == null) {
+            throw new NullPointerException("Reader is null");
+        }
+        mReader = reader;
+        mScopes[mDepth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public Token peek() throws IOException {
+        if (mToken != null) {
+            return mToken;
+        }
+        int scope = mScopes[mDepth - 1];
+        switch (scope) {
+            case EMPTY_DOCUMENT:
+                mScopes[mDepth - 1] = NONEMPTY_DOCUMENT;
+                return readValue(nextNonWhitespace());
+            case NONEMPTY_DOCUMENT: {
+                int c = nextNonWhitespace();
+                if (c != -1) {
+                    throw syntaxError("Expected end of document");
+                }
+                return mToken = Token.END_DOCUMENT;
+            }
+            case EMPTY_ARRAY:
+            case NONEMPTY_ARRAY: {
+                int c = nextNonWhitespace();
+                if (c == ']') {
+                    return mToken = Token.END_ARRAY;
+                }
+                if (scope == NONEMPTY_ARRAY) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or ']'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                mScopes[mDepth - 1] = NONEMPTY_ARRAY;
+                return readValue(c);
+            }
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT: {
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return mToken = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected name");
+                }
+                mScopes[mDepth - 1] = DANGLING_NAME;
+                mValue = readString();
+                return mToken = Token.NAME;
+            }
+            case DANGLING_NAME: {
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                mScopes[mDepth - 1] = NONEMPTY_OBJECT;
+                return readValue(nextNonWhitespace());
+            }
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current array or object has another
+     * element or member.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_ARRAY && token != Token.END_OBJECT
+                && token != Token.END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+        mDepth--;
+    }
+
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+        mDepth--;
+    }
+
+    /**
+     * Returns the name of the next member of the current object.
+     */
+    public String nextName() throws IOException {
+        consume(Token.NAME);
+        return mValue;
+    }
+
+    /**
+     * Returns the next value as a string. Numbers are returned as they appear
+     * in the document.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        mToken = null;
+        return mValue;
+    }
+
+    /**
+     * Returns the next value, which must be an integer or a string containing
+     * an integer, as a {@code long}.
+     */
+    public long nextLong() throws IOException {
+        String value = nextString();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected an integer but was " + value);
+        }
+    }
+
+    /**
+     * Returns the next value, which must be a number or a string containing a
+     * number, as a {@code double}.
+     */
+    public double nextDouble() throws IOException {
+        String value = nextString();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was " + value);
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        consume(Token.BOOLEAN);
+        return TRUE.equals(mValue);
+    }
+
+    public void nextNull() throws IOException {
+        consume(Token.NULL);
+    }
+
+    /**
+     * Skips the next value, including all of the elements or members of an
+     * array or object. If the next token is a name, the name and its value
+     * are skipped.
+     */
+    public void skipValue() throws IOException {
+        if (peek() == Token.NAME) {
+            mToken = null;
+        }
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    mToken = null;
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        mToken = null;
+    }
+
+    private void push(int scope) {
+        if (mDepth == mScopes.length) {
+            int[] scopes = new int[mDepth * 2];
+            System.arraycopy(mScopes, 0, scopes, 0, mDepth);
+            mScopes = scopes;
+        }
+        mScopes[mDepth++] = scope;
+    }
+
+    /**
+     * Reads the start of a value, or the whole value if it is not an array or
+     * an object.
+     *
+     * @param c the first character of the value.
+     */
+    private Token readValue(int c) throws IOException {
+        switch (c) {
+            case '[':
+                return mToken = Token.BEGIN_ARRAY;
+            case '{':
+                return mToken = Token.BEGIN_OBJECT;
+            case '"':
+                mValue = readString();
+                return mToken = Token.STRING;
+            case 't':
+                readLiteral(TRUE);
+                mValue = TRUE;
+                return mToken = Token.BOOLEAN;
+            case 'f':
+                readLiteral(FALSE);
+                mValue = FALSE;
+                return mToken = Token.BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                mValue = null;
+                return mToken = Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    mValue = readNumber(c);
+                    return mToken = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Reads a literal after its first character.
+     */
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+        }
+        int c = peekChar();
+        if (Character.isLetterOrDigit(c)) {
+            throw syntaxError("Expected " + literal);
+        }
+    }
+
+    /**
+     * Reads a number after its first character, which is {@code '-'} or a
+     * digit.
+     */
+    private String readNumber(int first) throws IOException {
+        StringBuilder builder = mBuilder;
+        builder.setLength(0);
+        builder.append((char) first);
+        int integer = first;
+        if (first == '-') {
+            integer = peekChar();
+            if (readDigit() == -1) {
+                throw syntaxError("Malformed number");
+            }
+        }
+        // A leading zero is not followed by other digits
+        if (integer != '0') {
+            readDigits();
+        }
+        int c = peekChar();
+        if (c == '.') {
+            builder.append('.');
+            mPosition++;
+            if (readDigits() == 0) {
+                throw syntaxError("Malformed number");
+            }
+            c = peekChar();
+        }
+        if (c == 'e' || c == 'E') {
+            builder.append((char) c);
+            mPosition++;
+            c = peekChar();
+            if (c == '+' || c == '-') {
+                builder.append((char) c);
+                mPosition++;
+            }
+            if (readDigits() == 0) {
+                throw syntaxError("Malformed number");
+            }
+            c = peekChar();
+        }
+        if ((c >= '0' && c <= '9') || c == '.' || c == '+' || c == '-'
+                || Character.isLetter(c)) {
+            throw syntaxError("Malformed number");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the next character to the number being read if it is a digit.
+     *
+     * @return the digit, or {@code -1} if the next character is not a digit.
+     */
+    private int readDigit() throws IOException {
+        int c = peekChar();
+        if (c < '0' || c > '9') {
+            return -1;
+        }
+        mBuilder.append((char) c);
+        mPosition++;
+        return c;
+    }
+
+    /**
+     * Appends a run of digits to the number being read.
+     *
+     * @return the number of digits.
+     */
+    private int readDigits() throws IOException {
+        int count = 0;
+        while (readDigit() != -1) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads a string after its opening quote.
+     */
+    private String readString() throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            // Copy runs of unescaped characters straight from the buffer
+            int start = mPosition;
+            while (mPosition < mLimit) {
+                char c = mBuffer[mPosition++];
+                if (c == '"') {
+                    if (builder == null) {
+                        return new String(mBuffer, start, mPosition - start - 1);
+                    }
+                    builder.append(mBuffer, start, mPosition - start - 1);
+                    return builder.toString();
+                } else if (c == '\\') {
+                    if (builder == null) {
+                        builder = mBuilder;
+                        builder.setLength(0);
+                    }
+                    builder.append(mBuffer, start, mPosition - start - 1);
+                    builder.append(readEscape());
+                    start = mPosition;
+                }
+            }
+            if (builder == null) {
+                builder = mBuilder;
+                builder.setLength(0);
+            }
+            builder.append(mBuffer, start, mPosition - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u': {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid escape sequence");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            }
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Returns the next character without consuming it, or {@code -1} at the
+     * end of the document.
+     */
+    private int peekChar() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition];
+    }
+
+    /**
+     * Consumes the next character, or returns {@code -1} at the end of the
+     * document.
+     */
+    private int read() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition++];
+    }
+
+    /**
+     * Replaces the consumed contents of the buffer.
+     *
+     * @return {@code false} at the end of the document.
+     */
+    private boolean fill() throws IOException {
+        mBufferOffset += mLimit;
+        mPosition = 0;
+        mLimit = 0;
+        int n = mReader.read(mBuffer, 0, mBuffer.length);
+        if (n == -1) {
+            return false;
+        }
+        mLimit = n;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at character " + (mBufferOffset + mPosition));
+    }
+}
@@ -0,0 +1,59 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ContentHandler;
+import java.net.URLConnection;
+
+/**
+ * A {@link ContentHandler} for reading data in JSON format one token at a
+ * time.
+ * <p>
+ * Unlike {@link JsonContentHandler}, the body is never held in memory as a
+ * whole: rows can be added to the output as each item is read, so the memory
+ * used does not depend on the size of the document. The handler may also stop
+ * reading before the end of the document.
+ */
+public abstract class JsonStreamContentHandler extends ContentHandler {
+
+    @Override
+    public Object getContent(URLConnection connection) throws IOException {
+        String charset = ContentHandlerUtils.getCharSet(connection);
+        InputStream input = ContentHandlerUtils.getUncompressedInputStream(connection);
+        try {
+            InputStreamReader reader = new InputStreamReader(input, charset);
+            return getContent(new JsonPullParser(reader));
+        } finally {
+            // Closing the stream discards the part of the document that was
+            // not read
+            input.close();
+        }
+    }
+
+    /**
+     * Parses JSON content.
+     *
+     * @param parser the parser, positioned at the start of the document.
+     * @return the value to return from {@link #getContent(URLConnection)}.
+     * @throws IOException if the JSON is not well-formed or does not have the
+     *             expected structure, or if it cannot be read.
+     */
+    protected abstract Object getContent(JsonPullParser parser) throws IOException;
+}
@@ -0,0 +1,188 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ContentHandler;
+import java.net.URLConnection;
+
+/**
+ * {@link java.net.ContentHandler} implementation for reading XML documents
+ * with an {@link XmlPullParser}.
+ * <p>
+ * Unlike {@link XmlContentHandler}, the handler drives the parser, so it can
+ * read a known element structure directly, skip elements it does not need
+ * without handling their events, and stop reading as soon as it has the items
+ * it needs, for example the item matching a filter or the first N items. The
+ * rest of the document is not read.
+ * <p>
+ * Namespace processing is enabled. A typical implementation of
+ * {@link #parse(XmlPullParser)}:
+ *
+ * <pre>
+ * parser.nextTag(); // rss
+ * parser.nextTag(); // channel
+ * int depth = parser.getDepth();
+ * while (nextChildElement(parser, depth)) {
+ *     if (&quot;item&quot;.equals(parser.getName())) {
+ *         readItem(parser);
+ *         if (++count == mItemCount) {
+ *             break;
+ *         }
+ *     } else {
+ *         skipElement(parser);
+ *     }
+ * }
+ * return FeedLoader.documentInfo(count);
+ * </pre>
+ */
+public abstract class XmlPullContentHandler extends ContentHandler {
+
+    /**
+     * Advances to the next child element of the element at the given depth.
+     * Content between child elements is ignored, and so is the content of a
+     * child element that was not read.
+     *
+     * @param parser the parser, positioned inside the parent element.
+     * @param depth the depth of the parent element, as returned by
+     *            {@link XmlPullParser#getDepth()} on its start tag.
+     * @return {@code true} if the parser is on the start tag of a child
+     *         element, or {@code false} if it is on the end tag of the parent
+     *         element.
+     */
+    protected static boolean nextChildElement(XmlPullParser parser, int depth)
+            throws XmlPullParserException, IOException {
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document", parser, null);
+            } else if (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth) {
+                return false;
+            } else if (eventType == XmlPullParser.START_TAG && parser.getDepth() == depth + 1) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Skips the current element and its children.
+     *
+     * @param parser the parser, positioned on the start tag of the element.
+     *            On return, it is positioned on the matching end tag.
+     */
+    protected static void skipElement(XmlPullParser parser) throws XmlPullParserException,
+            IOException {
+        parser.require(XmlPullParser.START_TAG, null, null);
+        int depth = parser.getDepth();
+        while (parser.next() != XmlPullParser.END_TAG || parser.getDepth() != depth) {
+            if (parser.getEventType() == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document", parser, null);
+            }
+        }
+    }
+
+    /**
+     * Reads the text of the current element, ignoring any child elements.
+     *
+     * @param parser the parser, positioned on the start tag of the element.
+     *            On return, it is positioned on the matching end tag.
+     * @return the text, which is empty if the element has no text.
+     */
+    protected static String readText(XmlPullParser parser) throws XmlPullParserException,
+            IOException {
+        parser.require(XmlPullParser.START_TAG, null, null);
+        int depth = parser.getDepth();
+        String text = null;
+        StringBuilder builder = null;
+        int eventType;
+        while ((eventType = parser.next()) != XmlPullParser.END_TAG
+                || parser.getDepth() != depth) {
+            if (eventType == XmlPullParser.TEXT && parser.getDepth() == depth) {
+                // Most elements have a single text event
+                if (text == null) {
+                    text = parser.getText();
+                } else {
+                    if (builder == null) {
+                        builder = new StringBuilder(text);
+                    }
+                    builder.append(parser.getText());
+                }
+            } else if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document", parser, null);
+            }
+        }
+        if (builder != null) {
+            return builder.toString();
+        } else {
+            return text != null ? text : "";
+        }
+    }
+
+    /**
+     * Returns {@code true} if the parser is on the start tag of an element with
+     * the given namespace and name.
+     */
+    protected static boolean isElement(XmlPullParser parser, String namespace, String name)
+            throws XmlPullParserException {
+        return parser.getEventType() == XmlPullParser.START_TAG
+                && name.equals(parser.getName()) && namespace.equals(parser.getNamespace());
+    }
+
+    @Override
+    public Object getContent(URLConnection connection) throws IOException {
+        InputStream in = ContentHandlerUtils.getUncompressedInputStream(connection);
+        try {
+            String encoding = ContentHandlerUtils.getCharSet(connection);
+            try {
+                XmlPullParser parser = Xml.newPullParser();
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+                parser.setInput(in, encoding);
+                return parse(parser);
+            } catch (XmlPullParserException e) {
+                // Re-throw XmlPullParserException as IOException
+                IOException ioe = new IOException();
+                ioe.initCause(e);
+                throw ioe;
+            }
+        } finally {
+            // Closing the stream discards the part of the document that was
+            // not read
+            in.close();
+        }
+    }
+
+    /**
+     * Parses a document.
+     * <p>
+     * The parser is positioned at the start of the document. The handler may
+     * return before the end of the document to stop reading it.
+     *
+     * @param parser the parser for the document.
+     * @return the value to return from {@link #getContent(URLConnection)},
+     *         typically {@link FeedLoader#documentInfo(int)}.
+     * @throws XmlPullParserException if the XML is not well-formed or does not
+     *             have the expected structure.
+     */
+    protected abstract Object parse(XmlPullParser parser) throws XmlPullParserException,
+            IOException;
+}
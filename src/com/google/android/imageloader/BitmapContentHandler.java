@@ -17,8 +17,8 @@
 package com.google.android.imageloader;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ContentHandler;
@@ -28,20 +28,31 @@ import java.net.URLConnection;
  * A {@link ContentHandler} that decodes a {@link Bitmap} from a
  * {@link URLConnection}.
  * <p>
- * The implementation includes a work-around for <a
+ * The whole stream is read before it is decoded, which avoids <a
  * href="http://code.google.com/p/android/issues/detail?id=6066">Issue 6066</a>.
+ * Local files opened by the {@link URLConnection} of
+ * {@link ImageLoader#ImageLoader(android.content.ContentResolver)} are
+ * decoded directly from their file descriptors instead.
  * <p>
- * An {@link IOException} is thrown if there is a decoding exception.
+ * When used by an {@link ImageLoader}, the image is decoded into a recycled
+ * {@link Bitmap} whenever a compatible one is available.
+ * <p>
+ * An {@link ImageDecodeException} is thrown if there is a decoding exception.
  */
 public class BitmapContentHandler extends ContentHandler {
     @Override
     public Bitmap getContent(URLConnection connection) throws IOException {
         InputStream input = connection.getInputStream();
         try {
-            input = new BlockingFilterInputStream(input);
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
+            // The decoder reads until the end of the stream,
+            // so the stream does not need to block for full reads.
+            BitmapDecoder decoder = BitmapDecoder.get();
+            FileInputStream file = connection instanceof ContentURLConnection
+                    ? ((ContentURLConnection) connection).getFileInputStream() : null;
+            Bitmap bitmap = file != null ? decoder.decode(file)
+                    : decoder.decode(input, connection.getContentLength());
             if (bitmap == null) {
-                throw new IOException("Image could not be decoded");
+                throw new ImageDecodeException("Image could not be decoded");
             }
             return bitmap;
         } finally {
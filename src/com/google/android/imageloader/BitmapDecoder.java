@@ -0,0 +1,533 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes encoded image data, reusing pooled {@link Bitmap Bitmaps} where the
+ * platform supports it.
+ * <p>
+ * If the decoder has an {@link ImageSpec}, large images are subsampled while
+ * they are decoded and then scaled down to fit the spec, and the spec's
+ * {@link BitmapTransformation BitmapTransformations} are applied.
+ * <p>
+ * {@link ImageLoader} installs a decoder for the current thread before
+ * invoking its {@link java.net.ContentHandler}, so that a
+ * {@link BitmapContentHandler} wrapped by another handler (for example, a
+ * caching handler) still decodes into the pool.
+ */
+final class BitmapDecoder {
+
+    /**
+     * Receives low-resolution previews of an image while it is being read.
+     */
+    public interface PreviewListener {
+        /**
+         * Called on the decoding thread with a preview {@link Bitmap} that is
+         * not used by the decoder afterwards.
+         */
+        void onPreview(Bitmap preview);
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The most bytes to read at once when previews are wanted, so that the
+     * decoder regains control while a large image is downloading.
+     */
+    private static final int PREVIEW_READ_SIZE = 8 * 1024;
+
+    /**
+     * No preview is decoded until this many bytes have been read.
+     */
+    private static final int MIN_PREVIEW_BYTES = 16 * 1024;
+
+    /**
+     * The time to wait after the download starts, or after the last preview,
+     * before decoding a preview.
+     */
+    private static final long PREVIEW_INTERVAL_MILLIS = 400;
+
+    private static final int MAX_PREVIEWS = 2;
+
+    /**
+     * The longest side of a preview, in pixels.
+     */
+    private static final int PREVIEW_SIZE = 128;
+
+    /**
+     * Read buffers larger than this are not kept between decodes.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 512 * 1024;
+
+    private static final BitmapDecoder DEFAULT = new BitmapDecoder(null);
+
+    /**
+     * Encoded image data that can be decoded more than once.
+     */
+    private static abstract class Source {
+        abstract Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    private static final class ByteArraySource extends Source {
+
+        private final byte[] mData;
+
+        private final int mOffset;
+
+        private final int mLength;
+
+        ByteArraySource(byte[] data, int offset, int length) {
+            mData = data;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        Bitmap decode(BitmapFactory.Options options) {
+            return BitmapFactory.decodeByteArray(mData, mOffset, mLength, options);
+        }
+    }
+
+    private static final class FileSource extends Source {
+
+        private final FileInputStream mInput;
+
+        private final long mStart;
+
+        FileSource(FileInputStream input) throws IOException {
+            mInput = input;
+            mStart = input.getChannel().position();
+        }
+
+        @Override
+        Bitmap decode(BitmapFactory.Options options) throws IOException {
+            // Each pass leaves the file at an arbitrary position
+            mInput.getChannel().position(mStart);
+            return BitmapFactory.decodeFileDescriptor(mInput.getFD(), null, options);
+        }
+    }
+
+    private static final ThreadLocal<BitmapDecoder> sDecoder = new ThreadLocal<BitmapDecoder>();
+
+    private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<byte[]>();
+
+    /**
+     * Returns the decoder installed for the current thread, or a decoder
+     * without a pool if there is none.
+     */
+    static BitmapDecoder get() {
+        BitmapDecoder decoder = sDecoder.get();
+        return decoder != null ? decoder : DEFAULT;
+    }
+
+    /**
+     * Installs a decoder for the current thread, or removes it if the decoder
+     * is {@code null}.
+     */
+    static void set(BitmapDecoder decoder) {
+        if (decoder != null) {
+            sDecoder.set(decoder);
+        } else {
+            sDecoder.remove();
+        }
+    }
+
+    private final BitmapPool mPool;
+
+    private final ImageSpec mSpec;
+
+    private volatile boolean mCancelled;
+
+    private int mMaxEncodedLength;
+
+    private byte[] mEncoded;
+
+    private volatile PreviewListener mPreviewListener;
+
+    private long mReadTime;
+
+    /**
+     * The options for the decode in progress, if any.
+     */
+    private volatile BitmapFactory.Options mOptions;
+
+    /**
+     * Constructor.
+     *
+     * @param pool the pool of reusable bitmaps, or {@code null}.
+     */
+    public BitmapDecoder(BitmapPool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pool the pool of reusable bitmaps, or {@code null}.
+     * @param spec the size and configuration to decode images to, or
+     *            {@code null} to decode them at their original size.
+     */
+    public BitmapDecoder(BitmapPool pool, ImageSpec spec) {
+        mPool = pool;
+        mSpec = spec;
+    }
+
+    public ImageSpec getSpec() {
+        return mSpec;
+    }
+
+    /**
+     * Stops reading or decoding as soon as possible. Any decode in progress or
+     * started later returns {@code null}.
+     * <p>
+     * This method may be called from any thread.
+     */
+    public void cancel() {
+        mCancelled = true;
+        BitmapFactory.Options options = mOptions;
+        if (options != null) {
+            options.requestCancelDecode();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Sets the longest encoded data read by {@link #decode(InputStream, int)}
+     * to keep a copy of when it is decoded successfully.
+     * <p>
+     * Data that is at least as large as the decoded {@link Bitmap} is not
+     * kept, because caching the {@link Bitmap} costs no more memory.
+     *
+     * @param maxLength the maximum length in bytes, or {@code 0} to keep
+     *            nothing.
+     * @see #takeEncoded()
+     */
+    public void setRetainEncoded(int maxLength) {
+        mMaxEncodedLength = maxLength;
+    }
+
+    /**
+     * Sets a listener to receive previews while an image is read by
+     * {@link #decode(InputStream, int)}.
+     * <p>
+     * Previews are only decoded when reading the image takes a noticeable
+     * amount of time. They are decoded from the data received so far, which
+     * shows the first scans of a progressive JPEG or the top of other images.
+     *
+     * @param listener the listener, or {@code null}.
+     */
+    public void setPreviewListener(PreviewListener listener) {
+        mPreviewListener = listener;
+    }
+
+    /**
+     * Returns the time at which {@link #decode(InputStream, int)} finished
+     * reading the stream, or {@link #decode(FileInputStream)} started, in {@link SystemClock#uptimeMillis()}, or {@code 0}
+     * if no stream has been read.
+     */
+    public long getReadTime() {
+        return mReadTime;
+    }
+
+    /**
+     * Returns the encoded data of the last image decoded from a stream, if it
+     * was retained, and forgets it.
+     *
+     * @return the encoded data, or {@code null}.
+     */
+    public byte[] takeEncoded() {
+        byte[] encoded = mEncoded;
+        mEncoded = null;
+        return encoded;
+    }
+
+    /**
+     * Reads the whole stream and decodes it.
+     * <p>
+     * The stream is read into a buffer that is reused by later decodes on the
+     * same thread, so small images do not allocate anything but the
+     * {@link Bitmap} itself (if no pooled {@link Bitmap} is available).
+     *
+     * @param input the encoded image.
+     * @param contentLength the expected length of the stream, or {@code -1}.
+     * @return the decoded {@link Bitmap}, or {@code null} if the data could not
+     *         be decoded or the decoder was cancelled.
+     */
+    public Bitmap decode(InputStream input, int contentLength) throws IOException {
+        byte[] buffer = sBuffer.get();
+        // Leave room for the end of the stream to be detected
+        // without growing the buffer. The Content-Length is not trusted
+        // for more than a retained buffer; larger images grow the buffer
+        // as the data arrives.
+        int size = contentLength > 0
+                ? (int) Math.min(contentLength + 1L, MAX_RETAINED_BUFFER_SIZE) : 0;
+        if (buffer == null) {
+            buffer = new byte[Math.max(size, INITIAL_BUFFER_SIZE)];
+        } else if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        int length = 0;
+        int read;
+        int previews = 0;
+        long previewTime = SystemClock.uptimeMillis() + PREVIEW_INTERVAL_MILLIS;
+        while ((read = input.read(buffer, length, getReadSize(buffer.length - length))) != -1) {
+            if (mCancelled) {
+                // Stop downloading
+                return null;
+            }
+            length += read;
+            PreviewListener listener = mPreviewListener;
+            if (listener != null && previews < MAX_PREVIEWS && length >= MIN_PREVIEW_BYTES
+                    && (contentLength <= 0 || length < contentLength)) {
+                long now = SystemClock.uptimeMillis();
+                if (now >= previewTime) {
+                    Bitmap preview = decodePreview(buffer, length);
+                    if (preview != null) {
+                        listener.onPreview(preview);
+                        previews++;
+                    }
+                    previewTime = SystemClock.uptimeMillis() + PREVIEW_INTERVAL_MILLIS;
+                }
+            }
+            if (length == buffer.length) {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+        }
+        mReadTime = SystemClock.uptimeMillis();
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+            sBuffer.set(buffer);
+        }
+        Bitmap bitmap = decode(new ByteArraySource(buffer, 0, length));
+        if (bitmap != null && length <= mMaxEncodedLength
+                && length < BitmapCache.sizeOf(bitmap)) {
+            // The buffer is reused, so the data must be copied
+            byte[] encoded = new byte[length];
+            System.arraycopy(buffer, 0, encoded, 0, length);
+            mEncoded = encoded;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes a local file directly from its descriptor, from the current
+     * position of the stream.
+     * <p>
+     * Unlike {@link #decode(InputStream, int)}, the file is not copied into
+     * memory first. When the dimensions must be read before the pixels, the
+     * file is rewound for the second pass. The stream is not closed.
+     *
+     * @param input a stream of a file that contains nothing but the image
+     *            from the current position onwards.
+     * @return the decoded {@link Bitmap}, or {@code null} if the data could not
+     *         be decoded or the decoder was cancelled.
+     */
+    public Bitmap decode(FileInputStream input) throws IOException {
+        mReadTime = SystemClock.uptimeMillis();
+        return decode(new FileSource(input));
+    }
+
+    private int getReadSize(int remaining) {
+        return mPreviewListener != null ? Math.min(remaining, PREVIEW_READ_SIZE) : remaining;
+    }
+
+    /**
+     * Decodes a heavily subsampled image from the first part of its data.
+     *
+     * @return the preview, or {@code null} if nothing could be decoded yet.
+     */
+    private Bitmap decodePreview(byte[] data, int length) throws IOException {
+        Source source = new ByteArraySource(data, 0, length);
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        source.decode(bounds);
+        int size = Math.max(bounds.outWidth, bounds.outHeight);
+        if (size <= 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inSampleSize = 1;
+        while (size / (options.inSampleSize * 2) >= PREVIEW_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        return transform(decode(source, options));
+    }
+
+    /**
+     * Decodes a byte array.
+     *
+     * @return the decoded {@link Bitmap}, or {@code null} if the data could not
+     *         be decoded or the decoder was cancelled.
+     */
+    public Bitmap decode(byte[] data, int offset, int length) {
+        try {
+            return decode(new ByteArraySource(data, offset, length));
+        } catch (IOException e) {
+            // Byte arrays are not read from a stream
+            return null;
+        }
+    }
+
+    private Bitmap decode(Source source) throws IOException {
+        return transform(decodeScaled(source));
+    }
+
+    private Bitmap decodeScaled(Source source) throws IOException {
+        if (mCancelled) {
+            return null;
+        }
+        boolean pooled = mPool != null && BitmapPool.isSupported();
+        if (!pooled && mSpec == null) {
+            return decode(source, new BitmapFactory.Options());
+        }
+
+        // Read the dimensions first to find a compatible bitmap
+        // or to choose a sample size
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        source.decode(bounds);
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        if (mSpec != null) {
+            options.inPreferredConfig = mSpec.getConfig();
+            options.inSampleSize = mSpec.getSampleSize(width, height);
+        }
+        if (!pooled) {
+            return scale(decode(source, options));
+        }
+
+        // Decoded bitmaps must be mutable so that they can be pooled later
+        options.inMutable = true;
+
+        // Subsampled images cannot be decoded into an existing bitmap
+        Bitmap reusable = options.inSampleSize == 1 ? mPool.get(width, height,
+                options.inPreferredConfig) : null;
+        if (reusable != null) {
+            options.inBitmap = reusable;
+            try {
+                return scale(decode(source, options));
+            } catch (IllegalArgumentException e) {
+                // The format does not support decoding into an existing
+                // bitmap (for example, GIF). Decode into a new bitmap.
+                mPool.put(reusable);
+                options.inBitmap = null;
+            }
+        }
+        return scale(decode(source, options));
+    }
+
+    /**
+     * Scales a decoded {@link Bitmap} down to fit the {@link ImageSpec}, if
+     * necessary, and releases the original.
+     */
+    private Bitmap scale(Bitmap bitmap) {
+        if (bitmap == null || mSpec == null) {
+            return bitmap;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (!mSpec.isLarger(width, height)) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                mSpec.getScaledWidth(width, height), mSpec.getScaledHeight(width, height), true);
+        if (scaled != bitmap) {
+            release(bitmap);
+        }
+        return scaled;
+    }
+
+    /**
+     * Applies the {@link BitmapTransformation BitmapTransformations} of the
+     * {@link ImageSpec} in order, releasing the intermediate images.
+     */
+    private Bitmap transform(Bitmap bitmap) {
+        if (bitmap == null || mSpec == null) {
+            return bitmap;
+        }
+        int count = mSpec.getTransformationCount();
+        for (int i = 0; i < count; i++) {
+            if (mCancelled) {
+                release(bitmap);
+                return null;
+            }
+            Bitmap transformed = mSpec.getTransformation(i).transform(bitmap);
+            if (transformed == null) {
+                release(bitmap);
+                throw new NullPointerException("Transformation returned null");
+            }
+            if (transformed != bitmap) {
+                release(bitmap);
+            }
+            bitmap = transformed;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a {@link Bitmap} that is no longer used to the pool, or recycles
+     * it.
+     */
+    private void release(Bitmap bitmap) {
+        if (mPool == null || !mPool.put(bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
+    private Bitmap decode(Source source, BitmapFactory.Options options) throws IOException {
+        mOptions = options;
+        try {
+            if (mCancelled) {
+                return null;
+            }
+            Bitmap bitmap = source.decode(options);
+            if (mCancelled) {
+                // Nobody will display the bitmap, but it can still be reused,
+                // and so can the pooled bitmap of an interrupted decode
+                // (inBitmap is only set where the pool is supported)
+                if (bitmap != null) {
+                    release(bitmap);
+                } else if (mPool != null && BitmapPool.isSupported() && options.inBitmap != null) {
+                    release(options.inBitmap);
+                }
+                return null;
+            }
+            return bitmap;
+        } finally {
+            mOptions = null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * A pool of mutable {@link Bitmap Bitmaps} that can be decoded into instead of
+ * allocating new ones.
+ * <p>
+ * Bitmaps are grouped by width, height and {@link Bitmap.Config}, because
+ * {@code BitmapFactory.Options.inBitmap} requires an exact match on the
+ * platform versions that support it. The pool is bounded by size in bytes and
+ * drops the least recently added bitmaps first.
+ * <p>
+ * A {@link Bitmap} must not be added to the pool while it is still cached or
+ * displayed, since its pixels will be overwritten.
+ */
+class BitmapPool {
+
+    /**
+     * {@code BitmapFactory.Options.inBitmap} is available on Honeycomb and
+     * later. On earlier platforms, pixel data is not allocated on the Java
+     * heap and there is nothing to gain from keeping bitmaps around.
+     */
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= 11;
+    }
+
+    private static final class Key {
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final Bitmap.Config mConfig;
+
+        public Key(int width, int height, Bitmap.Config config) {
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key that = (Key) o;
+                return mWidth == that.mWidth && mHeight == that.mHeight
+                        && mConfig == that.mConfig;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * mWidth + mHeight) * 31 + mConfig.hashCode();
+        }
+    }
+
+    private final HashMap<Key, LinkedList<Bitmap>> mBuckets;
+
+    /**
+     * All pooled bitmaps, least recently added first.
+     */
+    private final LinkedList<Bitmap> mOrder;
+
+    private final long mMaxBytes;
+
+    private long mBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes the maximum size of the pool in bytes.
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+        mBuckets = new HashMap<Key, LinkedList<Bitmap>>();
+        mOrder = new LinkedList<Bitmap>();
+    }
+
+    /**
+     * Adds a {@link Bitmap} to the pool if it can be reused.
+     *
+     * @return {@code true} if the bitmap was added, {@code false} otherwise.
+     */
+    public synchronized boolean put(Bitmap bitmap) {
+        if (!isSupported() || !bitmap.isMutable() || bitmap.isRecycled()) {
+            return false;
+        }
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == null) {
+            return false;
+        }
+        long size = BitmapCache.sizeOf(bitmap);
+        if (size > mMaxBytes) {
+            return false;
+        }
+        Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), config);
+        LinkedList<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put(key, bucket);
+        } else if (bucket.contains(bitmap)) {
+            return true;
+        }
+        bucket.addLast(bitmap);
+        mOrder.addLast(bitmap);
+        mBytes += size;
+        while (mBytes > mMaxBytes) {
+            removeBitmap(mOrder.getFirst());
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns a {@link Bitmap} with the given dimensions and
+     * configuration, or returns {@code null} if there is none.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        LinkedList<Bitmap> bucket = mBuckets.get(new Key(width, height, config));
+        if (bucket == null || bucket.isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap = bucket.getLast();
+        removeBitmap(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Removes all bitmaps from the pool.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+        mOrder.clear();
+        mBytes = 0;
+    }
+
+    private void removeBitmap(Bitmap bitmap) {
+        Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        LinkedList<Bitmap> bucket = mBuckets.get(key);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(key);
+        }
+        mOrder.remove(bitmap);
+        mBytes -= BitmapCache.sizeOf(bitmap);
+    }
+}
@@ -0,0 +1,52 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+
+/**
+ * Transforms images after they are decoded, for example to crop them to
+ * squares, round their corners or draw a frame over them.
+ * <p>
+ * Transformations run on the loading thread, and their results are cached in
+ * memory (and by a {@link ThumbnailCache}), so binding a cached image does not
+ * transform it again.
+ *
+ * @see ImageSpec#withTransformation(BitmapTransformation)
+ */
+public interface BitmapTransformation {
+
+    /**
+     * Returns a string that identifies this transformation and its parameters,
+     * for example {@code "rounded(8)"}. It becomes part of the cache key, so
+     * transformations that produce different results must have different
+     * keys.
+     */
+    String getKey();
+
+    /**
+     * Transforms an image.
+     * <p>
+     * This method is called on a background thread and must not modify the
+     * source unless it returns it.
+     *
+     * @param source the decoded image, which is released by the caller if a
+     *            different {@link Bitmap} is returned.
+     * @return the transformed image, which may be the source.
+     */
+    Bitmap transform(Bitmap source);
+}
@@ -0,0 +1,333 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe cache bounded by the total size of its values.
+ * <p>
+ * Reads do not take a lock, so a lookup on the UI thread never waits for a
+ * background thread that is inserting or evicting values. Writes are
+ * serialized.
+ * <p>
+ * Eviction approximates LRU with the CLOCK (second chance) algorithm: a read
+ * only sets a flag on the entry instead of re-ordering a linked list, and the
+ * eviction sweep gives flagged entries one more pass before removing them.
+ * <p>
+ * By default, each value has a size of {@code 1}, so the maximum size is the
+ * maximum number of entries. Override {@link #sizeOf(Object, Object)} to
+ * measure values in other units (for example, bytes).
+ */
+class ClockCache<K, V> {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final class Entry<K, V> {
+
+        final K mKey;
+
+        final V mValue;
+
+        final long mSize;
+
+        /**
+         * Set when the entry is read, cleared when the clock hand passes over
+         * the entry.
+         */
+        volatile boolean mReferenced;
+
+        Entry(K key, V value, long size) {
+            mKey = key;
+            mValue = value;
+            mSize = size;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<K, V>> mMap;
+
+    /**
+     * The eviction order, with the clock hand at the head.
+     * <p>
+     * Entries that have been removed or replaced are not removed from this
+     * list immediately; they are skipped by the sweep or dropped by
+     * {@link #compact()}.
+     */
+    private final LinkedList<Entry<K, V>> mClock;
+
+    private final Object mLock = new Object();
+
+    private final long mMaxSize;
+
+    /**
+     * The total size of all values. Only modified while holding
+     * {@link #mLock}.
+     */
+    private volatile long mSize;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum total size of the values in the cache.
+     */
+    public ClockCache(long maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        mMaxSize = maxSize;
+        mMap = new ConcurrentHashMap<K, Entry<K, V>>(INITIAL_CAPACITY, LOAD_FACTOR);
+        mClock = new LinkedList<Entry<K, V>>();
+    }
+
+    /**
+     * Returns the size of a value, in the units used for the maximum size.
+     * <p>
+     * The size of a value must not change while it is in the cache.
+     */
+    protected long sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Called after a value has been removed from the cache, without holding
+     * any locks.
+     *
+     * @param evicted {@code true} if the value was removed to make space,
+     *            {@code false} if it was removed or replaced explicitly.
+     */
+    protected void entryRemoved(boolean evicted, K key, V value) {
+    }
+
+    /**
+     * Returns the value for the given key, or {@code null} if it is not
+     * cached.
+     * <p>
+     * This method does not block.
+     */
+    public V get(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Key is null");
+        }
+        Entry<K, V> entry = mMap.get(key);
+        if (entry != null) {
+            entry.mReferenced = true;
+            return entry.mValue;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if there is a value for the given key.
+     * <p>
+     * Unlike {@link #get(Object)}, this method does not count as a use of the
+     * value.
+     */
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Key is null");
+        }
+        return mMap.containsKey(key);
+    }
+
+    /**
+     * Adds a value to the cache, evicting other values if the cache is too
+     * big.
+     *
+     * @return the previous value for the key, or {@code null}.
+     */
+    public V put(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("Key is null");
+        }
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+        Entry<K, V> entry = new Entry<K, V>(key, value, sizeOf(key, value));
+        Entry<K, V> previous;
+        List<Entry<K, V>> evicted;
+        synchronized (mLock) {
+            previous = mMap.put(key, entry);
+            long size = mSize + entry.mSize;
+            if (previous != null) {
+                size -= previous.mSize;
+            }
+            mSize = size;
+            mClock.addLast(entry);
+            evicted = sweep(mMaxSize);
+            compact();
+        }
+        if (previous != null && previous.mValue != value) {
+            entryRemoved(false, key, previous.mValue);
+        }
+        notifyEvicted(evicted);
+        return previous != null ? previous.mValue : null;
+    }
+
+    /**
+     * Removes the value for the given key.
+     *
+     * @return the removed value, or {@code null}.
+     */
+    public V remove(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Key is null");
+        }
+        Entry<K, V> previous;
+        synchronized (mLock) {
+            previous = mMap.remove(key);
+            if (previous != null) {
+                mSize -= previous.mSize;
+                compact();
+            }
+        }
+        if (previous != null) {
+            entryRemoved(false, previous.mKey, previous.mValue);
+            return previous.mValue;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Evicts values until the total size is at most the given size, without
+     * changing the maximum size.
+     */
+    public void trimToSize(long size) {
+        List<Entry<K, V>> evicted;
+        synchronized (mLock) {
+            evicted = sweep(size);
+            compact();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        List<Entry<K, V>> removed;
+        synchronized (mLock) {
+            removed = new ArrayList<Entry<K, V>>(mMap.values());
+            mMap.clear();
+            mClock.clear();
+            mSize = 0;
+        }
+        for (Entry<K, V> entry : removed) {
+            entryRemoved(false, entry.mKey, entry.mValue);
+        }
+    }
+
+    /**
+     * Returns a read-only view of the keys in the cache.
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(mMap.keySet());
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     */
+    public int count() {
+        return mMap.size();
+    }
+
+    /**
+     * Returns the total size of the values in the cache.
+     */
+    public long size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the maximum total size of the values in the cache.
+     */
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    private boolean isLive(Entry<K, V> entry) {
+        return mMap.get(entry.mKey) == entry;
+    }
+
+    /**
+     * Advances the clock hand until the total size is at most {@code maxSize}.
+     * <p>
+     * Must be called while holding {@link #mLock}.
+     *
+     * @return the evicted entries.
+     */
+    private List<Entry<K, V>> sweep(long maxSize) {
+        List<Entry<K, V>> evicted = null;
+
+        // Every live entry gets at most one second chance, so the sweep
+        // terminates even if readers keep setting the referenced flag.
+        int chances = mClock.size();
+
+        while (mSize > maxSize && !mClock.isEmpty()) {
+            Entry<K, V> entry = mClock.removeFirst();
+            if (!isLive(entry)) {
+                // Removed or replaced since it was added
+                continue;
+            }
+            if (entry.mReferenced && chances > 0) {
+                entry.mReferenced = false;
+                mClock.addLast(entry);
+                chances--;
+                continue;
+            }
+            mMap.remove(entry.mKey, entry);
+            mSize -= entry.mSize;
+            if (evicted == null) {
+                evicted = new ArrayList<Entry<K, V>>();
+            }
+            evicted.add(entry);
+        }
+        return evicted;
+    }
+
+    /**
+     * Drops stale entries from the clock if they make up most of it.
+     * <p>
+     * Must be called while holding {@link #mLock}.
+     */
+    private void compact() {
+        if (mClock.size() > INITIAL_CAPACITY && mClock.size() > 2 * mMap.size()) {
+            for (Iterator<Entry<K, V>> it = mClock.iterator(); it.hasNext();) {
+                if (!isLive(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void notifyEvicted(List<Entry<K, V>> evicted) {
+        if (evicted != null) {
+            for (Entry<K, V> entry : evicted) {
+                entryRemoved(true, entry.mKey, entry.mValue);
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import android.content.ContentResolver;
 import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
@@ -31,6 +33,11 @@ import java.net.URLConnection;
 /**
  * {@link URLConnection} implementation for {@code content://}, {@code file://},
  * and {@code android.resource://} URIs.
+ * <p>
+ * Input is read through an {@link AssetFileDescriptor} where the content
+ * provides one, so that a local file can be decoded directly from its
+ * descriptor (see {@link #getFileInputStream()}). The descriptor is closed
+ * with the input stream.
  */
 class ContentURLConnection extends URLConnection {
 
@@ -40,6 +47,13 @@ class ContentURLConnection extends URLConnection {
 
     private InputStream mInputStream;
 
+    /**
+     * The stream of a whole local file, or {@code null}.
+     */
+    private FileInputStream mFileInputStream;
+
+    private long mLength = -1;
+
     private OutputStream mOutputStream;
 
     private boolean mConnected;
@@ -61,7 +75,7 @@ class ContentURLConnection extends URLConnection {
     @Override
     public void connect() throws IOException {
         if (getDoInput()) {
-            InputStream in = mResolver.openInputStream(mUri);
+            InputStream in = openInputStream();
             mInputStream = new ContentURLConnectionInputStream(in);
         }
         if (getDoOutput()) {
@@ -71,6 +85,44 @@ class ContentURLConnection extends URLConnection {
         mConnected = true;
     }
 
+    private InputStream openInputStream() throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = mResolver.openAssetFileDescriptor(mUri, "r");
+        } catch (FileNotFoundException e) {
+            // Some content, such as compressed resources,
+            // can only be opened as a stream.
+            fd = null;
+        }
+        if (fd == null) {
+            return mResolver.openInputStream(mUri);
+        }
+        mLength = fd.getLength();
+        // Closing the stream closes the descriptor
+        InputStream in = fd.createInputStream();
+        if (fd.getStartOffset() == 0 && fd.getDeclaredLength() == AssetFileDescriptor.UNKNOWN_LENGTH
+                && in instanceof FileInputStream) {
+            mFileInputStream = (FileInputStream) in;
+        }
+        return in;
+    }
+
+    /**
+     * Returns the input stream of a whole local file, from which an image can
+     * be decoded directly through its descriptor, or {@code null} if the
+     * content is not a whole file (for example, an uncompressed asset inside
+     * a package) or the input stream has been closed.
+     * <p>
+     * The stream is closed when the stream returned by
+     * {@link #getInputStream()} is closed.
+     */
+    FileInputStream getFileInputStream() throws IOException {
+        if (!mConnected) {
+            connect();
+        }
+        return mInputStreamClosed ? null : mFileInputStream;
+    }
+
     @Override
     public InputStream getInputStream() throws IOException {
         if (mInputStreamClosed) {
@@ -108,15 +160,31 @@ class ContentURLConnection extends URLConnection {
 
     @Override
     public int getContentLength() {
+        long length = mLength;
+        if (length < 0 && !mConnected) {
+            length = getLength();
+        }
+        return length >= 0 && length <= Integer.MAX_VALUE ? (int) length : -1;
+    }
+
+    /**
+     * Returns the length of the content without connecting, or {@code -1} if
+     * it is unknown.
+     */
+    private long getLength() {
         try {
             AssetFileDescriptor fd = mResolver.openAssetFileDescriptor(mUri, "r");
-            long length = fd.getLength();
-            if (length <= 0 && length <= Integer.MAX_VALUE) {
-                return (int) length;
+            if (fd == null) {
+                return -1;
+            }
+            try {
+                return fd.getLength();
+            } finally {
+                fd.close();
             }
         } catch (IOException e) {
+            return -1;
         }
-        return -1;
     }
 
     private class ContentURLConnectionInputStream extends FilterInputStream {
@@ -36,6 +36,10 @@ public class ContentURLStreamHandlerFactory implements URLStreamHandlerFactory {
         mResolver = resolver;
     }
 
+    ContentResolver getResolver() {
+        return mResolver;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,205 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * Decides how long {@link ImageLoader} waits before trying to load an image
+ * again after an error.
+ * <p>
+ * Each consecutive failure of the same URL doubles the delay, up to a
+ * maximum, and a random jitter is applied so that many failed images do not
+ * all retry at the same moment. The initial and maximum delays depend on the
+ * {@link Kind} of error: an image that does not exist or cannot be decoded is
+ * unlikely to recover soon, while a timeout often recovers within seconds.
+ * <p>
+ * Network errors and timeouts also count against the host. After
+ * {@link #getHostFailureThreshold()} consecutive failures on the same host,
+ * all of its images are held back as well, so that an unreachable server is
+ * not contacted once for every image it serves.
+ * <p>
+ * Subclasses can override the {@code protected} methods to change the delays
+ * or the classification of errors.
+ *
+ * @see ImageLoader#setErrorBackoff(ErrorBackoff)
+ */
+public class ErrorBackoff {
+
+    /**
+     * The kinds of errors that are backed off independently.
+     */
+    public static enum Kind {
+        /**
+         * The image does not exist (for example, HTTP 404).
+         */
+        NOT_FOUND,
+        /**
+         * The image was read but could not be decoded.
+         */
+        DECODE,
+        /**
+         * The connection or read timed out.
+         */
+        TIMEOUT,
+        /**
+         * Any other I/O error, such as an unknown host or a refused
+         * connection.
+         */
+        NETWORK,
+        /**
+         * There was not enough memory to decode the image.
+         */
+        OUT_OF_MEMORY,
+        /**
+         * An unexpected exception.
+         */
+        OTHER
+    }
+
+    private static final long SECOND = 1000;
+
+    private static final long MINUTE = 60 * SECOND;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final int DEFAULT_HOST_FAILURE_THRESHOLD = 3;
+
+    private static final float DEFAULT_JITTER = 0.25f;
+
+    private final Random mRandom = new Random();
+
+    private final float mJitter;
+
+    /**
+     * Creates a policy with the default delays and a jitter of 25%.
+     */
+    public ErrorBackoff() {
+        this(DEFAULT_JITTER);
+    }
+
+    /**
+     * Creates a policy with the default delays.
+     *
+     * @param jitter the fraction by which delays are randomly lengthened or
+     *            shortened, between {@code 0} and {@code 1}.
+     */
+    public ErrorBackoff(float jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        mJitter = jitter;
+    }
+
+    /**
+     * Classifies an error thrown while loading an image.
+     */
+    protected Kind classify(Throwable error) {
+        if (error instanceof ImageDecodeException) {
+            return Kind.DECODE;
+        } else if (error instanceof FileNotFoundException) {
+            // HttpURLConnection throws FileNotFoundException for 404 and 410
+            return Kind.NOT_FOUND;
+        } else if (error instanceof InterruptedIOException) {
+            // Includes SocketTimeoutException
+            return Kind.TIMEOUT;
+        } else if (error instanceof IOException) {
+            return Kind.NETWORK;
+        } else if (error instanceof OutOfMemoryError) {
+            return Kind.OUT_OF_MEMORY;
+        } else {
+            return Kind.OTHER;
+        }
+    }
+
+    /**
+     * Returns the delay after the first failure, in milliseconds.
+     */
+    protected long getInitialDelay(Kind kind) {
+        switch (kind) {
+            case NOT_FOUND:
+            case DECODE:
+                return 5 * MINUTE;
+            case TIMEOUT:
+            case NETWORK:
+                return 5 * SECOND;
+            case OUT_OF_MEMORY:
+                return 10 * SECOND;
+            default:
+                return 30 * SECOND;
+        }
+    }
+
+    /**
+     * Returns the longest delay, in milliseconds.
+     */
+    protected long getMaxDelay(Kind kind) {
+        switch (kind) {
+            case NOT_FOUND:
+            case DECODE:
+                return HOUR;
+            case TIMEOUT:
+            case NETWORK:
+                return 5 * MINUTE;
+            case OUT_OF_MEMORY:
+                return 2 * MINUTE;
+            default:
+                return 10 * MINUTE;
+        }
+    }
+
+    /**
+     * Returns {@code true} if errors of this kind suggest that the host is
+     * unavailable, rather than a particular image.
+     */
+    protected boolean isHostError(Kind kind) {
+        return kind == Kind.TIMEOUT || kind == Kind.NETWORK;
+    }
+
+    /**
+     * Returns the number of consecutive host errors after which all images on
+     * the host are held back.
+     */
+    protected int getHostFailureThreshold() {
+        return DEFAULT_HOST_FAILURE_THRESHOLD;
+    }
+
+    /**
+     * Returns the delay before retrying, in milliseconds.
+     *
+     * @param kind the kind of the latest error.
+     * @param failures the number of consecutive failures, including the latest
+     *            one.
+     */
+    public long getDelay(Kind kind, int failures) {
+        long maxDelay = getMaxDelay(kind);
+        long delay = getInitialDelay(kind);
+        for (int i = 1; i < failures && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        if (mJitter != 0) {
+            // Uniformly distributed in [1 - jitter, 1 + jitter)
+            double factor = 1 - mJitter + 2 * mJitter * mRandom.nextDouble();
+            delay = (long) (delay * factor);
+        }
+        return delay;
+    }
+}
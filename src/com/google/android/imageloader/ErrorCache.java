@@ -0,0 +1,189 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+/**
+ * Remembers recent errors per URL and per host and decides whether a URL
+ * should be loaded again, according to an {@link ErrorBackoff}.
+ * <p>
+ * An entry is kept after its delay has expired, so that the next failure
+ * backs off for longer; it is removed when the URL loads successfully.
+ * <p>
+ * Times are passed in by the caller, in milliseconds from any fixed origin.
+ * This class is thread-safe and lookups do not block.
+ */
+class ErrorCache {
+
+    // Hold information for at least a few pages full of thumbnails.
+    private static final int MAX_URLS = 256;
+
+    private static final int MAX_HOSTS = 32;
+
+    private static final class Entry {
+
+        final Throwable mCause;
+
+        final ErrorBackoff.Kind mKind;
+
+        /**
+         * The number of consecutive failures.
+         */
+        final int mFailures;
+
+        /**
+         * The time before which the URL or host should not be tried again.
+         */
+        final long mRetryTime;
+
+        Entry(Throwable cause, ErrorBackoff.Kind kind, int failures, long retryTime) {
+            mCause = cause;
+            mKind = kind;
+            mFailures = failures;
+            mRetryTime = retryTime;
+        }
+    }
+
+    /**
+     * Returns the host of a URL, or {@code null} if it has none.
+     */
+    static String getHost(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return null;
+        }
+        start += 3;
+        int end = start;
+        int length = url.length();
+        while (end < length) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return end > start ? url.substring(start, end) : null;
+    }
+
+    private final ClockCache<String, Entry> mUrls;
+
+    private final ClockCache<String, Entry> mHosts;
+
+    private volatile ErrorBackoff mBackoff;
+
+    public ErrorCache(ErrorBackoff backoff) {
+        mUrls = new ClockCache<String, Entry>(MAX_URLS);
+        mHosts = new ClockCache<String, Entry>(MAX_HOSTS);
+        setBackoff(backoff);
+    }
+
+    public void setBackoff(ErrorBackoff backoff) {
+        if (backoff == null) {
+            throw new NullPointerException("ErrorBackoff is null");
+        }
+        mBackoff = backoff;
+    }
+
+    /**
+     * Returns the error that prevents a URL from being loaded at the given
+     * time, or {@code null} if it can be loaded.
+     */
+    public Throwable get(String url, long now) {
+        Throwable error = getUrlError(url, now);
+        if (error != null) {
+            return error;
+        }
+        String host = getHost(url);
+        if (host != null) {
+            Entry entry = mHosts.get(host);
+            if (entry != null && now < entry.mRetryTime) {
+                return entry.mCause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the error that prevents a URL from being loaded at the given
+     * time because of a failure of the URL itself, ignoring failures of other
+     * URLs on the same host, or {@code null} if there is none.
+     */
+    public Throwable getUrlError(String url, long now) {
+        Entry entry = mUrls.get(url);
+        return entry != null && now < entry.mRetryTime ? entry.mCause : null;
+    }
+
+    /**
+     * Records a failure to load a URL.
+     */
+    public void put(String url, Throwable error, long now) {
+        ErrorBackoff backoff = mBackoff;
+        ErrorBackoff.Kind kind = backoff.classify(error);
+        mUrls.put(url, next(mUrls.get(url), error, kind, now, 1, true));
+
+        String host = getHost(url);
+        if (host != null) {
+            if (backoff.isHostError(kind)) {
+                int threshold = backoff.getHostFailureThreshold();
+                mHosts.put(host, next(mHosts.get(host), error, kind, now, threshold, false));
+            } else {
+                // The host responded
+                mHosts.remove(host);
+            }
+        }
+    }
+
+    /**
+     * Records a successful load, resetting the backoff for the URL and host.
+     */
+    public void remove(String url) {
+        // Check first, because lookups do not take a lock
+        if (mUrls.containsKey(url)) {
+            mUrls.remove(url);
+        }
+        String host = getHost(url);
+        if (host != null && mHosts.containsKey(host)) {
+            mHosts.remove(host);
+        }
+    }
+
+    public void clear() {
+        mUrls.clear();
+        mHosts.clear();
+    }
+
+    /**
+     * Returns the entry following a failure.
+     *
+     * @param previous the previous entry, or {@code null}.
+     * @param threshold the number of failures at which a delay is first
+     *            applied.
+     * @param perKind {@code true} to start counting again when the kind of
+     *            error changes.
+     */
+    private Entry next(Entry previous, Throwable error, ErrorBackoff.Kind kind, long now,
+            int threshold, boolean perKind) {
+        int failures = 1;
+        if (previous != null && (!perKind || previous.mKind == kind)) {
+            failures = previous.mFailures + 1;
+        }
+        long retryTime = now;
+        if (failures >= threshold) {
+            retryTime += mBackoff.getDelay(kind, failures - threshold + 1);
+        }
+        return new Entry(error, kind, failures, retryTime);
+    }
+}
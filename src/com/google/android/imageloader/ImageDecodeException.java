@@ -1,5 +1,5 @@
 /*-
- * Copyright (C) 2010 Google Inc.
+ * Copyright (C) 2011 Google Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,26 +16,19 @@
 
 package com.google.android.imageloader;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
 
 /**
- * A LRU cache for holding image data or meta-data.
+ * Thrown when image data was read successfully but could not be decoded.
  */
-class LruCache<K, V> extends LinkedHashMap<K, V> {
+@SuppressWarnings("serial")
+public class ImageDecodeException extends IOException {
 
-    private static final int INITIAL_CAPACITY = 32;
-
-    // Hold information for at least a few pages full of thumbnails.
-    private static final int MAX_CAPACITY = 256;
-
-    private static final float LOAD_FACTOR = 0.75f;
-
-    public LruCache() {
-        super(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    public ImageDecodeException() {
+        super();
     }
 
-    @Override
-    protected boolean removeEldestEntry(java.util.Map.Entry<K, V> eldest) {
-        return size() > MAX_CAPACITY;
+    public ImageDecodeException(String detailMessage) {
+        super(detailMessage);
     }
 }
@@ -17,6 +17,7 @@
 package com.google.android.imageloader;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.Application;
 import android.content.ContentResolver;
 import android.content.Context;
@@ -24,10 +25,10 @@ import android.database.Cursor;
 import android.database.DataSetObserver;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
-import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
@@ -46,32 +47,150 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A helper class to load images asynchronously.
+ * <p>
+ * On platforms that support it, bitmaps that are no longer cached or
+ * displayed are decoded into again instead of being left for the garbage
+ * collector. Therefore, callers must not keep references to a {@link Bitmap}
+ * (or a {@link Drawable} wrapping it) that was assigned to an
+ * {@link ImageView} by this class after the {@link ImageView} has been
+ * unbound or bound to a different URL.
  */
 public final class ImageLoader {
 
     private static final String TAG = "ImageLoader";
 
+    // Enough to decode a screen or two of thumbnails without allocating.
+    private static final int BITMAP_POOL_FRACTION = 4;
+
+    /**
+     * The size of the cache of encoded images, as a fraction of the size of
+     * the {@link Bitmap} cache.
+     */
+    private static final int ENCODED_CACHE_FRACTION = 4;
+
+    /**
+     * Encoded images larger than this fraction of the encoded cache are not
+     * cached, so that one large image does not evict many small ones.
+     */
+    private static final int MAX_ENCODED_ENTRY_FRACTION = 8;
+
+    /**
+     * The protocols whose handlers are looked up when the loader is created.
+     */
+    private static final String[] COMMON_PROTOCOLS = {
+            "http", "https", ContentResolver.SCHEME_CONTENT, ContentResolver.SCHEME_FILE,
+            ContentResolver.SCHEME_ANDROID_RESOURCE
+    };
+
+    /**
+     * Marks protocols that the {@link URLStreamHandlerFactory} does not
+     * support, which use the default handler.
+     */
+    private static final URLStreamHandler DEFAULT_STREAM_HANDLER = new URLStreamHandler() {
+        @Override
+        protected URLConnection openConnection(URL url) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
     /**
      * The default maximum number of active tasks.
      */
     public static final int DEFAULT_TASK_LIMIT = 3;
 
     /**
-     * The default cache size (in bytes).
+     * The default maximum number of pending requests.
+     * <p>
+     * Adapter requests, pre-loads and pre-fetches beyond this number are
+     * dropped, oldest first.
+     *
+     * @see #setQueueCapacity(int)
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 48;
+
+    /**
+     * The default time to collect results before delivering them together
+     * (in milliseconds), which is about one frame.
+     *
+     * @see #setDeliveryInterval(long)
+     */
+    public static final long DEFAULT_DELIVERY_INTERVAL = 16;
+
+    /**
+     * The default cache size (in bytes) when the memory class of the device is
+     * not known.
+     *
+     * @see #getDefaultCacheSize(Context)
      */
     // 25% of available memory, up to a maximum of 16MB
     public static final long DEFAULT_CACHE_SIZE = Math.min(Runtime.getRuntime().maxMemory() / 4,
             16 * 1024 * 1024);
 
+    /**
+     * The default cache size as a fraction of the memory class.
+     */
+    private static final int MEMORY_CLASS_FRACTION = 8;
+
+    // The values of the android.content.ComponentCallbacks2 constants,
+    // which are not available in the platform this library is built against.
+
+    /**
+     * Memory trim level: the process is running, but the device is beginning
+     * to run low on memory.
+     *
+     * @see #onTrimMemory(int)
+     */
+    public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+
+    /**
+     * Memory trim level: the process is running, but the device is running
+     * much lower on memory.
+     */
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+
+    /**
+     * Memory trim level: the process is running, but the device is running
+     * extremely low on memory.
+     */
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+
+    /**
+     * Memory trim level: the user interface of the process is no longer
+     * visible.
+     */
+    public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+
+    /**
+     * Memory trim level: the process is on the list of background processes
+     * that can be killed.
+     */
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+
+    /**
+     * Memory trim level: the process is near the middle of the list of
+     * background processes that can be killed.
+     */
+    public static final int TRIM_MEMORY_MODERATE = 60;
+
+    /**
+     * Memory trim level: the process is one of the first to be killed if
+     * memory is not freed.
+     */
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
     /**
      * Use with {@link Context#getSystemService(String)} to retrieve an
      * {@link ImageLoader} for loading images.
@@ -86,6 +205,28 @@ public final class ImageLoader {
      */
     public static final String IMAGE_LOADER_SERVICE = "com.google.android.imageloader";
 
+    /**
+     * Returns a cache size suited to the memory class of the device, which is
+     * one eighth of the heap that the application is expected to stay within.
+     * <p>
+     * The memory class is not available before Android 2.0 (API level 5), where
+     * {@link #DEFAULT_CACHE_SIZE} is returned instead.
+     *
+     * @see ActivityManager#getMemoryClass()
+     */
+    public static long getDefaultCacheSize(Context context) {
+        if (Integer.parseInt(Build.VERSION.SDK) < 5) {
+            return DEFAULT_CACHE_SIZE;
+        }
+        ActivityManager manager = (ActivityManager) context
+                .getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = manager != null ? manager.getMemoryClass() : 0;
+        if (memoryClass <= 0) {
+            return DEFAULT_CACHE_SIZE;
+        }
+        return memoryClass * 1024L * 1024L / MEMORY_CLASS_FRACTION;
+    }
+
     /**
      * Gets the {@link ImageLoader} from a {@link Context}.
      *
@@ -162,9 +303,36 @@ public final class ImageLoader {
         ERROR
     }
 
-    private static String getProtocol(String url) {
-        Uri uri = Uri.parse(url);
-        return uri.getScheme();
+    /**
+     * Returns the key identifying an image in the in-memory cache, which
+     * depends on the {@link ImageSpec} as well as the URL.
+     */
+    private static String getKey(String url, ImageSpec spec) {
+        return spec != null ? url + " " + spec : url;
+    }
+
+    /**
+     * Returns the scheme of a URL, or {@code null} if it has none.
+     * <p>
+     * As in RFC 3986, the scheme ends at the first {@code ':'} only if it
+     * comes before any {@code '/'}, {@code '?'} or {@code '#'}, so a relative
+     * path such as {@code "images/a:b.jpg"} has no scheme. This is stricter
+     * than {@link android.net.Uri#getScheme()}, which returns everything
+     * before the first {@code ':'}.
+     */
+    static String getProtocol(String url) {
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            switch (url.charAt(i)) {
+                case ':':
+                    return url.substring(0, i);
+                case '/':
+                case '?':
+                case '#':
+                    return null;
+            }
+        }
+        return null;
     }
 
     private final ContentHandler mBitmapContentHandler;
@@ -173,22 +341,78 @@ public final class ImageLoader {
 
     private final URLStreamHandlerFactory mURLStreamHandlerFactory;
 
-    private final HashMap<String, URLStreamHandler> mStreamHandlers;
+    /**
+     * Loads thumbnails of {@link android.provider.MediaStore} images, or
+     * {@code null} if {@code content://} URIs are not supported.
+     */
+    private final MediaThumbnails mMediaThumbnails;
+
+    /**
+     * The handlers created by {@link #mURLStreamHandlerFactory}, by protocol.
+     * Protocols that the factory does not support map to
+     * {@link #DEFAULT_STREAM_HANDLER}.
+     * <p>
+     * Lookups do not block, so tasks do not contend for a lock to start a
+     * request.
+     */
+    private final ConcurrentHashMap<String, URLStreamHandler> mStreamHandlers;
+
+    /**
+     * Requests that are queued or running, keyed by
+     * {@link #getKey(String, ImageSpec)}, so that repeated binds join the
+     * existing request instead of loading the image again.
+     * <p>
+     * Only accessed on the UI thread.
+     */
+    private final RequestScheduler<ImageRequest> mScheduler;
 
-    private final LinkedList<ImageRequest> mRequests;
+    private final RequestQueue<ImageRequest> mRequests;
 
     /**
      * A cache containing recently used bitmaps.
      * <p>
-     * Use soft references so that the application does not run out of memory in
-     * the case where one or more of the bitmaps are large.
+     * Lookups do not block, so binding on the UI thread never waits for a
+     * background task that is storing or evicting a bitmap.
      */
-    private final Map<String, Bitmap> mBitmaps;
+    private final BitmapCache<String> mBitmaps;
 
     /**
      * Recent errors encountered when loading bitmaps.
      */
-    private final Map<String, ImageError> mErrors;
+    private final ErrorCache mErrors;
+
+    /**
+     * The encoded data of recently loaded images.
+     * <p>
+     * Encoded images are typically much smaller than the decoded
+     * {@link Bitmap Bitmaps}, so many more of them fit in the same memory. An
+     * image that was evicted from {@link #mBitmaps} can be decoded again from
+     * this cache without reading it from a file or the network.
+     */
+    private final ClockCache<String, byte[]> mEncodedImages;
+
+    private volatile ThumbnailCache mThumbnails;
+
+    /**
+     * Bitmaps that are no longer in use, available for decoding into.
+     */
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Tracks the last {@link Bitmap} assigned to each {@link ImageView}, so
+     * that a {@link Bitmap} is never recycled while it is displayed.
+     * <p>
+     * Only accessed on the UI thread.
+     */
+    private final Map<ImageView, Bitmap> mDisplayedBitmaps;
+
+    /**
+     * Bitmaps that have been removed from {@link #mBitmaps} while they were
+     * still displayed. They are recycled when they are no longer displayed.
+     * <p>
+     * Only accessed on the UI thread.
+     */
+    private final Map<Bitmap, Boolean> mRemovedBitmaps;
 
     /**
      * Tracks the last URL that was bound to an {@link ImageView}.
@@ -209,14 +433,67 @@ public final class ImageLoader {
     private final Map<ImageView, String> mImageViewBinding;
 
     /**
-     * The maximum number of active tasks.
+     * Whether to interrupt the thread of a running request when it is
+     * cancelled.
+     */
+    private boolean mInterruptOnCancel;
+
+    /**
+     * Whether images loaded for adapters are assigned to the waiting views
+     * instead of notifying the adapter.
+     */
+    private boolean mUpdateViewsInPlace;
+
+    /**
+     * The durations of each {@link ImageLoaderStats.Stage}, indexed by
+     * ordinal.
+     */
+    private final LatencyHistogram[] mStageHistograms;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    private final AtomicLong mEncodedHitCount = new AtomicLong();
+
+    private final AtomicLong mThumbnailHitCount = new AtomicLong();
+
+    private final AtomicLong mErrorCount = new AtomicLong();
+
+    private ImageLoaderStats.StatsListener mStatsListener;
+
+    /**
+     * Whether to show previews of images that are slow to download.
+     */
+    private volatile boolean mPreviewEnabled;
+
+    /**
+     * Posts previews and results to the main thread.
+     */
+    private final Handler mMainHandler;
+
+    /**
+     * Requests that have completed but whose results have not been delivered
+     * yet.
      */
-    private final int mMaxTaskCount;
+    private List<ImageRequest> mCompleted;
 
     /**
-     * The current number of active tasks.
+     * Adapters to notify once the completed requests have been delivered.
      */
-    private int mActiveTaskCount;
+    private final Set<AdapterCallback> mChangedAdapters;
+
+    private long mDeliveryInterval = DEFAULT_DELIVERY_INTERVAL;
+
+    private boolean mDeliveryScheduled;
+
+    private final Runnable mDeliverResults = new Runnable() {
+        public void run() {
+            deliverResults();
+        }
+    };
 
     /**
      * Creates an {@link ImageLoader}.
@@ -256,21 +533,73 @@ public final class ImageLoader {
         if (cacheSize < 1) {
             throw new IllegalArgumentException("Cache size must be positive");
         }
-        mMaxTaskCount = taskLimit;
         mURLStreamHandlerFactory = streamFactory;
-        mStreamHandlers = streamFactory != null ? new HashMap<String, URLStreamHandler>() : null;
+        mMediaThumbnails = streamFactory instanceof ContentURLStreamHandlerFactory
+                ? new MediaThumbnails(((ContentURLStreamHandlerFactory) streamFactory).getResolver())
+                : null;
+        if (streamFactory != null) {
+            mStreamHandlers = new ConcurrentHashMap<String, URLStreamHandler>();
+            for (String protocol : COMMON_PROTOCOLS) {
+                getURLStreamHandler(protocol);
+            }
+        } else {
+            mStreamHandlers = null;
+        }
         mBitmapContentHandler = bitmapHandler != null ? bitmapHandler : new BitmapContentHandler();
         mPrefetchContentHandler = prefetchHandler;
 
         mImageViewBinding = new WeakHashMap<ImageView, String>();
 
-        mRequests = new LinkedList<ImageRequest>();
+        mScheduler = new RequestScheduler<ImageRequest>(taskLimit, DEFAULT_QUEUE_CAPACITY,
+                new RequestScheduler.Callback<ImageRequest>() {
+                    public String getKey(ImageRequest request) {
+                        return request.mKey;
+                    }
+
+                    public boolean isDroppable(ImageRequest request) {
+                        return !request.isExplicit();
+                    }
+
+                    public void onDropped(ImageRequest request) {
+                        onRequestDropped(request);
+                    }
 
-        // Use a LruCache to prevent the set of keys from growing too large.
-        // The Maps must be synchronized because they are accessed
-        // by the UI thread and by background threads.
-        mBitmaps = Collections.synchronizedMap(new BitmapCache<String>(cacheSize));
-        mErrors = Collections.synchronizedMap(new LruCache<String, ImageError>());
+                    public void start(ImageRequest request) {
+                        startRequest(request);
+                    }
+                });
+        mRequests = mScheduler.getQueue();
+
+        // The caches are accessed by the UI thread and by background threads,
+        // so they must be thread-safe. They are bounded to prevent the
+        // set of keys from growing too large.
+        mBitmaps = new BitmapCache<String>(cacheSize) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap value) {
+                if (evicted) {
+                    mEvictionCount.incrementAndGet();
+                }
+                onBitmapRemoved(value);
+            }
+        };
+        mErrors = new ErrorCache(new ErrorBackoff());
+        mEncodedImages = new ClockCache<String, byte[]>(cacheSize / ENCODED_CACHE_FRACTION) {
+            @Override
+            protected long sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+
+        mBitmapPool = new BitmapPool(cacheSize / BITMAP_POOL_FRACTION);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mCompleted = new ArrayList<ImageRequest>();
+        mStageHistograms = new LatencyHistogram[ImageLoaderStats.Stage.values().length];
+        for (int i = 0; i < mStageHistograms.length; i++) {
+            mStageHistograms[i] = new LatencyHistogram();
+        }
+        mChangedAdapters = new LinkedHashSet<AdapterCallback>();
+        mDisplayedBitmaps = new WeakHashMap<ImageView, Bitmap>();
+        mRemovedBitmaps = new WeakHashMap<Bitmap, Boolean>();
     }
 
     /**
@@ -363,37 +692,168 @@ public final class ImageLoader {
         if (factory == null) {
             return null;
         }
-        HashMap<String, URLStreamHandler> handlers = mStreamHandlers;
-        synchronized (handlers) {
-            URLStreamHandler handler = handlers.get(protocol);
+        if (protocol == null) {
+            return null;
+        }
+        ConcurrentHashMap<String, URLStreamHandler> handlers = mStreamHandlers;
+        URLStreamHandler handler = handlers.get(protocol);
+        if (handler == null) {
+            // Another thread may create a handler for the same protocol at the
+            // same time; the first one stored is kept.
+            handler = factory.createURLStreamHandler(protocol);
             if (handler == null) {
-                handler = factory.createURLStreamHandler(protocol);
-                if (handler != null) {
-                    handlers.put(protocol, handler);
-                }
+                handler = DEFAULT_STREAM_HANDLER;
             }
-            return handler;
+            URLStreamHandler existing = handlers.putIfAbsent(protocol, handler);
+            if (existing != null) {
+                handler = existing;
+            }
+        }
+        return handler != DEFAULT_STREAM_HANDLER ? handler : null;
+    }
+
+    /**
+     * Creates a task to service a request taken from the queue by the
+     * {@link RequestScheduler}.
+     */
+    private void startRequest(ImageRequest request) {
+        ImageTask task = new ImageTask();
+        request.mStarted = true;
+        request.mTask = task;
+        task.executeOnThreadPool(request);
+    }
+
+    /**
+     * Called when a request is dropped because the queue is full.
+     * <p>
+     * Adapter requests are made again when their views are bound again, so
+     * dropping them only loses requests for rows that are no longer visible.
+     */
+    private void onRequestDropped(ImageRequest request) {
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, "Queue full (" + mRequests.size() + "), dropped " + request.mUrl);
+        }
+    }
+
+    /**
+     * Sets the maximum number of pending requests.
+     * <p>
+     * When the limit is exceeded, the oldest adapter requests are dropped
+     * first, followed by the oldest pre-loads and pre-fetches. Requests made
+     * with {@link #bind(ImageView, String, Callback)} are never dropped.
+     *
+     * @see #DEFAULT_QUEUE_CAPACITY
+     */
+    public void setQueueCapacity(int capacity) {
+        mRequests.setCapacity(capacity);
+    }
+
+    /**
+     * Returns the number of requests waiting to be started.
+     */
+    public int getQueueDepth() {
+        return mRequests.size();
+    }
+
+    /**
+     * Returns the largest number of requests that have been waiting to be
+     * started at the same time.
+     */
+    public int getPeakQueueDepth() {
+        return mRequests.getPeakSize();
+    }
+
+    /**
+     * Returns the number of requests that have been dropped because the
+     * queue was full.
+     */
+    public long getDroppedRequestCount() {
+        return mRequests.getDroppedCount();
+    }
+
+    /**
+     * Returns a snapshot of the latency histograms, cache statistics and
+     * queue depth.
+     * <p>
+     * Use these numbers to choose the task limit and cache sizes: long
+     * {@link ImageLoaderStats.Stage#QUEUE} times call for more tasks, while a
+     * low hit count and many evictions call for a larger cache.
+     */
+    public ImageLoaderStats getStats() {
+        ImageLoaderStats.Histogram[] stages =
+                new ImageLoaderStats.Histogram[mStageHistograms.length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = mStageHistograms[i].snapshot();
         }
+        return new ImageLoaderStats(stages, mHitCount.get(), mMissCount.get(),
+                mEvictionCount.get(), mEncodedHitCount.get(), mThumbnailHitCount.get(),
+                mErrorCount.get(), mRequests.size(), mRequests.getPeakSize(),
+                mRequests.getDroppedCount(), mScheduler.getActiveTaskCount(), mBitmaps.size(),
+                mBitmaps.maxSize());
     }
 
     /**
-     * Creates tasks to service any pending requests until {@link #mRequests} is
-     * empty or {@link #mMaxTaskCount} is reached.
+     * Resets the histograms and counters returned by {@link #getStats()}.
      */
-    void flushRequests() {
-        while (mActiveTaskCount < mMaxTaskCount && !mRequests.isEmpty()) {
-            new ImageTask().executeOnThreadPool(mRequests.poll());
+    public void resetStats() {
+        for (LatencyHistogram histogram : mStageHistograms) {
+            histogram.reset();
         }
+        mHitCount.set(0);
+        mMissCount.set(0);
+        mEvictionCount.set(0);
+        mEncodedHitCount.set(0);
+        mThumbnailHitCount.set(0);
+        mErrorCount.set(0);
     }
 
-    private void enqueueRequest(ImageRequest request) {
-        mRequests.add(request);
-        flushRequests();
+    /**
+     * Sets a listener to receive the timings of each image as it is
+     * delivered, or {@code null} to remove it.
+     * <p>
+     * Must be called on the UI thread.
+     */
+    public void setStatsListener(ImageLoaderStats.StatsListener listener) {
+        mStatsListener = listener;
     }
 
-    private void insertRequestAtFrontOfQueue(ImageRequest request) {
-        mRequests.add(0, request);
-        flushRequests();
+    /**
+     * Adds a callback to the request that is already in flight for a URL, or
+     * creates and enqueues a new request if there is none.
+     *
+     * @param url the image URL.
+     * @param spec the size to load the image at, or {@code null}.
+     * @param view the {@link ImageView} waiting for the image, or {@code null}
+     *            to pre-load or pre-fetch the URL.
+     * @param callback the callback to add, or {@code null} to pre-load or
+     *            pre-fetch the URL.
+     * @param loadBitmap {@code true} to load the image into memory,
+     *            {@code false} to pre-fetch it.
+     * @param atFront {@code true} to service the request before those already
+     *            in the queue.
+     */
+    private void request(String url, ImageSpec spec, ImageView view, ImageCallback callback,
+            boolean loadBitmap, boolean atFront) {
+        String key = getKey(url, spec);
+        ImageRequest request = mScheduler.get(key);
+        if (request != null && loadBitmap && !request.mLoadBitmap) {
+            if (request.mStarted) {
+                // A running pre-fetch cannot be upgraded; let it finish.
+                request = null;
+            } else {
+                request.mLoadBitmap = true;
+            }
+        }
+        if (request == null) {
+            request = new ImageRequest(url, spec, loadBitmap);
+            request.addCallback(view, callback);
+            mScheduler.submit(request, atFront);
+        } else {
+            request.addCallback(view, callback);
+            if (atFront && !request.mStarted) {
+                mScheduler.moveToFront(request);
+            }
+        }
     }
 
     /**
@@ -406,6 +866,23 @@ public final class ImageLoader {
      * @throws NullPointerException if any of the arguments are {@code null}.
      */
     public BindResult bind(BaseAdapter adapter, ImageView view, String url) {
+        return bind(adapter, view, url, null);
+    }
+
+    /**
+     * Binds a URL to an {@link ImageView} within an
+     * {@link android.widget.AdapterView}, scaling the image down to the given
+     * {@link ImageSpec}.
+     *
+     * @param adapter the adapter for the {@link android.widget.AdapterView}.
+     * @param view the {@link ImageView}.
+     * @param url the image URL.
+     * @param spec the size to load the image at, or {@code null} for its
+     *            original size.
+     * @return a {@link BindResult}.
+     * @throws NullPointerException if a required argument is {@code null}.
+     */
+    public BindResult bind(BaseAdapter adapter, ImageView view, String url, ImageSpec spec) {
         if (adapter == null) {
             throw new NullPointerException("Adapter is null");
         }
@@ -415,27 +892,27 @@ public final class ImageLoader {
         if (url == null) {
             throw new NullPointerException("URL is null");
         }
-        Bitmap bitmap = getBitmap(url);
-        ImageError error = getError(url);
+        String key = getKey(url, spec);
+        setBinding(view, key);
+        Bitmap bitmap = lookupBitmap(key);
+        Throwable error = getError(url);
         if (bitmap != null) {
-            view.setImageBitmap(bitmap);
+            setImageBitmap(view, bitmap);
             return BindResult.OK;
         } else {
             // Clear the ImageView by default.
             // The caller can set their own placeholder
             // based on the return value.
-            view.setImageDrawable(null);
+            setImageBitmap(view, null);
 
             if (error != null) {
                 return BindResult.ERROR;
             } else {
-                ImageRequest request = new ImageRequest(adapter, url);
-
                 // For adapters, post the latest requests
                 // at the front of the queue in case the user
                 // has already scrolled past most of the images
                 // that are currently in the queue.
-                insertRequestAtFrontOfQueue(request);
+                request(url, spec, view, new BaseAdapterCallback(adapter), true, true);
 
                 return BindResult.LOADING;
             }
@@ -452,6 +929,25 @@ public final class ImageLoader {
      * @throws NullPointerException if any of the arguments are {@code null}.
      */
     public BindResult bind(BaseExpandableListAdapter adapter, ImageView view, String url) {
+        return bind(adapter, view, url, null);
+    }
+
+    /**
+     * Binds a URL to an {@link ImageView} within an
+     * {@link android.widget.ExpandableListView}, scaling the image down to the
+     * given {@link ImageSpec}.
+     *
+     * @param adapter the adapter for the
+     *            {@link android.widget.ExpandableListView}.
+     * @param view the {@link ImageView}.
+     * @param url the image URL.
+     * @param spec the size to load the image at, or {@code null} for its
+     *            original size.
+     * @return a {@link BindResult}.
+     * @throws NullPointerException if a required argument is {@code null}.
+     */
+    public BindResult bind(BaseExpandableListAdapter adapter, ImageView view, String url,
+            ImageSpec spec) {
         if (adapter == null) {
             throw new NullPointerException("Adapter is null");
         }
@@ -461,27 +957,28 @@ public final class ImageLoader {
         if (url == null) {
             throw new NullPointerException("URL is null");
         }
-        Bitmap bitmap = getBitmap(url);
-        ImageError error = getError(url);
+        String key = getKey(url, spec);
+        setBinding(view, key);
+        Bitmap bitmap = lookupBitmap(key);
+        Throwable error = getError(url);
         if (bitmap != null) {
-            view.setImageBitmap(bitmap);
+            setImageBitmap(view, bitmap);
             return BindResult.OK;
         } else {
             // Clear the ImageView by default.
             // The caller can set their own placeholder
             // based on the return value.
-            view.setImageDrawable(null);
+            setImageBitmap(view, null);
 
             if (error != null) {
                 return BindResult.ERROR;
             } else {
-                ImageRequest request = new ImageRequest(adapter, url);
-
                 // For adapters, post the latest requests
                 // at the front of the queue in case the user
                 // has already scrolled past most of the images
                 // that are currently in the queue.
-                insertRequestAtFrontOfQueue(request);
+                request(url, spec, view, new BaseExpandableListAdapterCallback(adapter), true,
+                        true);
 
                 return BindResult.LOADING;
             }
@@ -513,17 +1010,36 @@ public final class ImageLoader {
      * @throws NullPointerException if a required argument is {@code null}
      */
     public BindResult bind(ImageView view, String url, Callback callback) {
+        return bind(view, url, null, callback);
+    }
+
+    /**
+     * Binds an image at the given URL to an {@link ImageView}, scaling it down
+     * to the given {@link ImageSpec}.
+     *
+     * @param view the {@link ImageView} to bind.
+     * @param url the image URL.
+     * @param spec the size to load the image at, or {@code null} for its
+     *            original size.
+     * @param callback invoked after the image has finished loading or after an
+     *            error, or {@code null}.
+     * @return a {@link BindResult}.
+     * @throws NullPointerException if a required argument is {@code null}
+     * @see #bind(ImageView, String, Callback)
+     */
+    public BindResult bind(ImageView view, String url, ImageSpec spec, Callback callback) {
         if (view == null) {
             throw new NullPointerException("ImageView is null");
         }
         if (url == null) {
             throw new NullPointerException("URL is null");
         }
-        mImageViewBinding.put(view, url);
-        Bitmap bitmap = getBitmap(url);
-        ImageError error = getError(url);
+        String key = getKey(url, spec);
+        setBinding(view, key);
+        Bitmap bitmap = lookupBitmap(key);
+        Throwable error = getError(url);
         if (bitmap != null) {
-            view.setImageBitmap(bitmap);
+            setImageBitmap(view, bitmap);
             if (callback != null) {
                 callback.onImageLoaded(view, url);
             }
@@ -532,16 +1048,16 @@ public final class ImageLoader {
             // Clear the ImageView by default.
             // The caller can set their own placeholder
             // based on the return value.
-            view.setImageDrawable(null);
+            setImageBitmap(view, null);
 
             if (error != null) {
                 if (callback != null) {
-                    callback.onImageError(view, url, error.getCause());
+                    callback.onImageError(view, url, error);
                 }
                 return BindResult.ERROR;
             } else {
-                ImageRequest request = new ImageRequest(view, url, callback);
-                enqueueRequest(request);
+                request(url, spec, view, new ImageViewCallback(view, key, callback), true,
+                        false);
                 return BindResult.LOADING;
             }
         }
@@ -554,62 +1070,291 @@ public final class ImageLoader {
      * @see #bind(ImageView, String, Callback)
      */
     public void unbind(ImageView view) {
-        mImageViewBinding.remove(view);
-        view.setImageDrawable(null);
+        setBinding(view, null);
+        setImageBitmap(view, null);
     }
 
     /**
-     * Clears any cached errors.
+     * Sets whether the worker thread of a request that is already running
+     * should be interrupted when the request is cancelled.
      * <p>
-     * Call this method when a network connection is restored, or the user
-     * invokes a manual refresh of the screen.
+     * A request is cancelled when every {@link ImageView} waiting for it has
+     * been unbound or bound to a different URL. Queued requests are always
+     * removed from the queue, and running requests always stop before decoding
+     * if they can. Interrupting can stop them sooner, but it also affects any
+     * {@link ContentHandler} that does not expect to be interrupted, such as
+     * one that writes to a file cache. The default is {@code false}.
      */
-    public void clearErrors() {
-        mErrors.clear();
+    public void setInterruptOnCancel(boolean interrupt) {
+        mInterruptOnCancel = interrupt;
     }
 
     /**
-     * Pre-loads an image into memory.
+     * Sets whether images loaded for an adapter are assigned directly to the
+     * {@link ImageView ImageViews} waiting for them.
      * <p>
-     * The image may be unloaded if memory is low. Use {@link #prefetch(String)}
-     * and a file-based cache to pre-load more images.
+     * By default, the adapter is notified with
+     * {@link BaseAdapter#notifyDataSetChanged()} so that it binds the image
+     * again, which rebuilds every visible row. When this option is enabled,
+     * the image is assigned to the views that are still bound to it and the
+     * adapter is only notified if there are none, or if the image could not
+     * be loaded. Only enable it if the rows do not depend on the
+     * {@link BindResult} beyond the image itself, for example to hide a
+     * progress indicator.
      *
-     * @param url the image URL
-     * @throws NullPointerException if the URL is {@code null}
+     * @see #bind(BaseAdapter, ImageView, String)
+     * @see #bind(BaseExpandableListAdapter, ImageView, String)
      */
-    public void preload(String url) {
-        if (url == null) {
-            throw new NullPointerException();
-        }
-        if (null != getBitmap(url)) {
-            // The image is already loaded
-            return;
-        }
-        if (null != getError(url)) {
-            // A recent attempt to load the image failed,
-            // therefore this attempt is likely to fail as well.
-            return;
-        }
-        boolean loadBitmap = true;
-        ImageRequest task = new ImageRequest(url, loadBitmap);
-        enqueueRequest(task);
+    public void setUpdateViewsInPlace(boolean inPlace) {
+        mUpdateViewsInPlace = inPlace;
     }
 
     /**
-     * Pre-loads a range of images into memory from a {@link Cursor}.
-     * <p>
-     * Typically, an {@link Activity} would register a {@link DataSetObserver}
-     * and an {@link android.widget.AdapterView.OnItemSelectedListener}, then
-     * call this method to prime the in-memory cache with images adjacent to the
-     * current selection whenever the selection or data changes.
+     * Sets how long to collect results before delivering them together.
      * <p>
-     * Any invalid positions in the specified range will be silently ignored.
+     * Each adapter is notified of a change at most once per delivery, so
+     * images that finish loading at about the same time cause a single
+     * rebind of the list instead of one per image.
      *
-     * @param cursor a {@link Cursor} containing the image URLs.
-     * @param columnIndex the column index of the image URL. The column value
-     *            may be {@code NULL}.
-     * @param start the first position to load. For example, {@code
-     *            selectedPosition - 5}.
+     * @param millis the interval in milliseconds, or {@code 0} to deliver the
+     *            results that are ready as soon as possible.
+     * @see #DEFAULT_DELIVERY_INTERVAL
+     */
+    public void setDeliveryInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Interval must not be negative");
+        }
+        mDeliveryInterval = millis;
+    }
+
+    /**
+     * Queues a completed request to be delivered with the next batch.
+     */
+    private void onRequestCompleted(ImageRequest request) {
+        mCompleted.add(request);
+        if (!mDeliveryScheduled) {
+            mDeliveryScheduled = true;
+            if (mDeliveryInterval > 0) {
+                mMainHandler.postDelayed(mDeliverResults, mDeliveryInterval);
+            } else {
+                mMainHandler.post(mDeliverResults);
+            }
+        }
+    }
+
+    /**
+     * Delivers all completed requests, then notifies each adapter that was
+     * waiting for any of them once.
+     */
+    private void deliverResults() {
+        mDeliveryScheduled = false;
+        List<ImageRequest> completed = mCompleted;
+        mCompleted = new ArrayList<ImageRequest>();
+        for (ImageRequest request : completed) {
+            request.publishResult();
+        }
+        if (!mChangedAdapters.isEmpty()) {
+            List<AdapterCallback> adapters = new ArrayList<AdapterCallback>(mChangedAdapters);
+            mChangedAdapters.clear();
+            for (AdapterCallback adapter : adapters) {
+                adapter.notifyDataSetChanged();
+            }
+        }
+    }
+
+    /**
+     * Releases memory when the system is running low.
+     * <p>
+     * Call this method from {@link Application#onLowMemory()}. It must be
+     * called on the main thread.
+     */
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Releases memory according to how much the system needs.
+     * <p>
+     * On platforms that support it, call this method from
+     * {@code Application.onTrimMemory(int)}, which does not need to be
+     * annotated with {@link Override} to be called. It must be called on the
+     * main thread.
+     * <p>
+     * Images that are no longer displayed are evicted from the in-memory
+     * caches, more of them as the level rises: a quarter of the
+     * {@link Bitmap} cache at {@link #TRIM_MEMORY_RUNNING_MODERATE}, half at
+     * {@link #TRIM_MEMORY_RUNNING_LOW} and {@link #TRIM_MEMORY_UI_HIDDEN},
+     * three quarters at {@link #TRIM_MEMORY_RUNNING_CRITICAL} and
+     * {@link #TRIM_MEMORY_BACKGROUND}, and all of it above that. Images that
+     * are displayed are never released. Bitmaps kept for reuse by later
+     * decodes are released at every level.
+     *
+     * @param level one of the {@code TRIM_MEMORY_} constants.
+     */
+    public void onTrimMemory(int level) {
+        long bitmapSize = mBitmaps.maxSize();
+        long encodedSize = mEncodedImages.maxSize();
+        if (level >= TRIM_MEMORY_MODERATE) {
+            mBitmaps.clear();
+            mEncodedImages.clear();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            mBitmaps.trimToSize(bitmapSize / 4);
+            mEncodedImages.trimToSize(encodedSize / 4);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            mBitmaps.trimToSize(bitmapSize / 2);
+            mEncodedImages.trimToSize(encodedSize / 2);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            mBitmaps.trimToSize(bitmapSize * 3 / 4);
+        }
+
+        // Evicted bitmaps were added to the pool; release them as well,
+        // otherwise trimming would not free any memory.
+        mBitmapPool.clear();
+    }
+
+    /**
+     * Sets whether to show a low-resolution preview of an image while it is
+     * downloading, if the download takes a noticeable amount of time.
+     * <p>
+     * Previews are decoded from the data received so far, which shows the
+     * first scans of a progressive JPEG or the top part of other images, and
+     * are replaced by the full image when it has been loaded. They are only
+     * shown for images bound with
+     * {@link #bind(ImageView, String, Callback)}, such as the main
+     * image of a detail screen, and are never cached. The
+     * {@link ContentHandler} must use {@link BitmapContentHandler} to decode
+     * images. The default is {@code false}.
+     */
+    public void setPreviewEnabled(boolean enabled) {
+        mPreviewEnabled = enabled;
+    }
+
+    /**
+     * Records the image bound to an {@link ImageView} and cancels the request
+     * for the image it was previously bound to if nothing else is waiting for
+     * it.
+     *
+     * @param key the key of the image, or {@code null} to unbind the
+     *            {@link ImageView}.
+     * @see #getKey(String, ImageSpec)
+     */
+    private void setBinding(ImageView view, String key) {
+        String previous = key != null ? mImageViewBinding.put(view, key)
+                : mImageViewBinding.remove(view);
+        if (previous != null && !previous.equals(key)) {
+            ImageRequest request = mScheduler.get(previous);
+            if (request != null && request.removeView(view)) {
+                cancel(request);
+            }
+        }
+    }
+
+    /**
+     * Removes a request from the queue, or stops it if it is already running.
+     * Its callbacks are not notified.
+     */
+    private void cancel(ImageRequest request) {
+        mScheduler.finish(request);
+        if (!request.mStarted) {
+            mScheduler.dequeue(request);
+        } else {
+            request.cancel();
+            ImageTask task = request.mTask;
+            if (mInterruptOnCancel && task != null) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Clears any cached errors.
+     * <p>
+     * Call this method when a network connection is restored, or the user
+     * invokes a manual refresh of the screen.
+     */
+    public void clearErrors() {
+        mErrors.clear();
+    }
+
+    /**
+     * Sets the policy that decides how long to wait before trying to load an
+     * image again after an error.
+     *
+     * @throws NullPointerException if the policy is {@code null}.
+     */
+    public void setErrorBackoff(ErrorBackoff backoff) {
+        mErrors.setBackoff(backoff);
+    }
+
+    /**
+     * Sets a file-based cache for images loaded with an {@link ImageSpec}.
+     * <p>
+     * Images found in the cache are loaded without reading or decoding the
+     * full-size original, which makes a large difference when returning to a
+     * screen full of thumbnails of large images.
+     *
+     * @param cache the cache, or {@code null} to stop using one.
+     */
+    public void setThumbnailCache(ThumbnailCache cache) {
+        mThumbnails = cache;
+    }
+
+    /**
+     * Pre-loads an image into memory.
+     * <p>
+     * The image may be unloaded if memory is low. Use {@link #prefetch(String)}
+     * and a file-based cache to pre-load more images.
+     *
+     * @param url the image URL
+     * @throws NullPointerException if the URL is {@code null}
+     */
+    public void preload(String url) {
+        preload(url, null);
+    }
+
+    /**
+     * Pre-loads an image into memory, scaled down to the given
+     * {@link ImageSpec}.
+     *
+     * @param url the image URL
+     * @param spec the size to load the image at, or {@code null} for its
+     *            original size. It must match the {@link ImageSpec} that the
+     *            image will be bound with.
+     * @throws NullPointerException if the URL is {@code null}
+     * @see #preload(String)
+     */
+    public void preload(String url, ImageSpec spec) {
+        if (url == null) {
+            throw new NullPointerException();
+        }
+        if (null != lookupBitmap(getKey(url, spec))) {
+            // The image is already loaded
+            return;
+        }
+        if (null != getError(url)) {
+            // A recent attempt to load the image failed,
+            // therefore this attempt is likely to fail as well.
+            return;
+        }
+        boolean loadBitmap = true;
+        request(url, spec, null, null, loadBitmap, false);
+    }
+
+    /**
+     * Pre-loads a range of images into memory from a {@link Cursor}.
+     * <p>
+     * Typically, an {@link Activity} would register a {@link DataSetObserver}
+     * and an {@link android.widget.AdapterView.OnItemSelectedListener}, then
+     * call this method to prime the in-memory cache with images adjacent to the
+     * current selection whenever the selection or data changes.
+     * <p>
+     * Any invalid positions in the specified range will be silently ignored.
+     *
+     * @param cursor a {@link Cursor} containing the image URLs.
+     * @param columnIndex the column index of the image URL. The column value
+     *            may be {@code NULL}.
+     * @param start the first position to load. For example, {@code
+     *            selectedPosition - 5}.
      * @param end the first position not to load. For example, {@code
      *            selectedPosition + 5}.
      * @see #preload(String)
@@ -625,6 +1370,36 @@ public final class ImageLoader {
         }
     }
 
+    /**
+     * Cancels a pending pre-load or pre-fetch of a URL, unless an
+     * {@link ImageView} is waiting for the same image.
+     * <p>
+     * Call this method when an image that was pre-loaded or pre-fetched is
+     * no longer expected to be needed soon, for example because the user
+     * scrolled in the other direction.
+     *
+     * @param url the image URL.
+     * @see ScrollPrefetcher
+     */
+    public void cancelPreload(String url) {
+        cancelPreload(url, null);
+    }
+
+    /**
+     * Cancels a pending pre-load of a URL with an {@link ImageSpec}, unless an
+     * {@link ImageView} is waiting for the same image.
+     *
+     * @param url the image URL.
+     * @param spec the {@link ImageSpec} passed to
+     *            {@link #preload(String, ImageSpec)}.
+     */
+    public void cancelPreload(String url, ImageSpec spec) {
+        ImageRequest request = mScheduler.get(getKey(url, spec));
+        if (request != null && request.unprime()) {
+            cancel(request);
+        }
+    }
+
     /**
      * Pre-fetches the binary content for an image and stores it in a file-based
      * cache (if it is not already cached locally) without loading the image
@@ -651,8 +1426,7 @@ public final class ImageLoader {
             return;
         }
         boolean loadBitmap = false;
-        ImageRequest request = new ImageRequest(url, loadBitmap);
-        enqueueRequest(request);
+        request(url, null, null, null, loadBitmap, false);
     }
 
     /**
@@ -681,83 +1455,327 @@ public final class ImageLoader {
         }
     }
 
-    private void putBitmap(String url, Bitmap bitmap) {
-        mBitmaps.put(url, bitmap);
+    private void putBitmap(String key, Bitmap bitmap) {
+        mRemovedBitmaps.remove(bitmap);
+        mBitmaps.put(key, bitmap);
+    }
+
+    /**
+     * Assigns a {@link Bitmap} to an {@link ImageView}, or clears the
+     * {@link ImageView} if the {@link Bitmap} is {@code null}, and recycles the
+     * {@link Bitmap} it was displaying if possible.
+     */
+    private void setImageBitmap(ImageView view, Bitmap bitmap) {
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+        } else {
+            view.setImageDrawable(null);
+        }
+        Bitmap previous = bitmap != null ? mDisplayedBitmaps.put(view, bitmap)
+                : mDisplayedBitmaps.remove(view);
+        if (previous != null && previous != bitmap && mRemovedBitmaps.containsKey(previous)) {
+            recycleBitmap(previous);
+        }
     }
 
-    private void putError(String url, ImageError error) {
-        mErrors.put(url, error);
+    /**
+     * Called on the UI thread when a {@link Bitmap} is evicted from or
+     * replaced in {@link #mBitmaps}.
+     */
+    private void onBitmapRemoved(Bitmap bitmap) {
+        mRemovedBitmaps.put(bitmap, Boolean.TRUE);
+        recycleBitmap(bitmap);
     }
 
-    private Bitmap getBitmap(String url) {
-        return mBitmaps.get(url);
+    /**
+     * Adds a {@link Bitmap} that is no longer cached to the pool unless an
+     * {@link ImageView} is still displaying it.
+     */
+    private void recycleBitmap(Bitmap bitmap) {
+        if (!mDisplayedBitmaps.containsValue(bitmap)) {
+            mRemovedBitmaps.remove(bitmap);
+            mBitmapPool.put(bitmap);
+        }
     }
 
-    private ImageError getError(String url) {
-        ImageError error = mErrors.get(url);
-        return error != null && !error.isExpired() ? error : null;
+    private void putError(String url, Throwable error) {
+        mErrorCount.incrementAndGet();
+        mErrors.put(url, error, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Looks up a {@link Bitmap} on behalf of the application, counting the
+     * hit or miss.
+     */
+    private Bitmap lookupBitmap(String key) {
+        Bitmap bitmap = getBitmap(key);
+        if (bitmap != null) {
+            mHitCount.incrementAndGet();
+        } else {
+            mMissCount.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    private Bitmap getBitmap(String key) {
+        return mBitmaps.get(key);
+    }
+
+    private Throwable getError(String url) {
+        return mErrors.get(url, SystemClock.elapsedRealtime());
     }
 
     /**
      * Returns {@code true} if there was an error the last time the given URL
-     * was accessed and the error is not expired, {@code false} otherwise.
+     * was accessed and it should not be retried yet, {@code false} otherwise.
+     * Errors of other URLs on the same host are not considered.
      */
     private boolean hasError(String url) {
-        return getError(url) != null;
+        return mErrors.getUrlError(url, SystemClock.elapsedRealtime()) != null;
     }
 
     private class ImageRequest {
 
-        private final ImageCallback mCallback;
+        private final List<ImageCallback> mCallbacks;
 
         private final String mUrl;
 
-        private final boolean mLoadBitmap;
+        private final ImageSpec mSpec;
+
+        /**
+         * @see ImageLoader#getKey(String, ImageSpec)
+         */
+        private final String mKey;
+
+        /**
+         * May be changed on the UI thread until {@link #mStarted} is set.
+         */
+        private boolean mLoadBitmap;
+
+        /**
+         * {@code true} if the request was made by {@link ImageLoader#preload}
+         * or {@link ImageLoader#prefetch}, in which case it is wanted even if
+         * none of its callbacks are.
+         */
+        private volatile boolean mPrime;
+
+        /**
+         * Set on the UI thread when the request is removed from the queue.
+         */
+        private boolean mStarted;
+
+        private ImageTask mTask;
+
+        /**
+         * The views waiting for this request.
+         * <p>
+         * Only accessed on the UI thread.
+         */
+        private final Map<ImageView, Boolean> mViews;
+
+        private final BitmapDecoder mDecoder;
+
+        private volatile boolean mCancelled;
 
         private Bitmap mBitmap;
 
-        private ImageError mError;
+        /**
+         * {@code true} if {@link #mBitmap} was found in {@link #mBitmaps}
+         * rather than loaded by this request.
+         */
+        private boolean mCached;
+
+        private Throwable mError;
+
+        /**
+         * {@code true} if {@link #mError} was found in {@link #mErrors}
+         * rather than thrown while loading, so it must not be recorded again.
+         */
+        private boolean mCachedError;
+
+        /**
+         * {@code true} if {@link #execute()} produced a result that should be
+         * sent to the callbacks.
+         */
+        private boolean mHasResult;
+
+        /**
+         * When the request was made, in {@link SystemClock#uptimeMillis()}.
+         */
+        private final long mRequestTime;
+
+        // Set by the task, read on the UI thread after the result is posted
+
+        private long mStartTime;
+
+        private long mFetchTime;
 
-        private ImageRequest(String url, ImageCallback callback, boolean loadBitmap) {
+        private long mDecodeTime;
+
+        /**
+         * Creates a request without any callbacks.
+         *
+         * @see #addCallback(ImageCallback)
+         */
+        public ImageRequest(String url, ImageSpec spec, boolean loadBitmap) {
             mUrl = url;
-            mCallback = callback;
+            mSpec = spec;
+            mKey = getKey(url, spec);
+            mRequestTime = SystemClock.uptimeMillis();
             mLoadBitmap = loadBitmap;
+            mCallbacks = new CopyOnWriteArrayList<ImageCallback>();
+            mViews = new WeakHashMap<ImageView, Boolean>();
+            mDecoder = new BitmapDecoder(mBitmapPool, spec);
+            // Images too large for the encoded cache are not copied
+            mDecoder.setRetainEncoded((int) Math.min(Integer.MAX_VALUE,
+                    mEncodedImages.maxSize() / MAX_ENCODED_ENTRY_FRACTION));
         }
 
         /**
-         * Creates an {@link ImageTask} to load a {@link Bitmap} for an
-         * {@link ImageView} in an {@link android.widget.AdapterView}.
+         * Adds a callback to be notified when the request completes, unless an
+         * equal callback has already been added.
+         * <p>
+         * A {@code null} callback marks the request as a pre-load or
+         * pre-fetch.
+         *
+         * @param view the {@link ImageView} waiting for the request, or
+         *            {@code null}.
+         */
+        public void addCallback(ImageView view, ImageCallback callback) {
+            if (view != null) {
+                mViews.put(view, Boolean.TRUE);
+            }
+            if (callback == null) {
+                mPrime = true;
+            } else if (!mCallbacks.contains(callback)) {
+                mCallbacks.add(callback);
+            }
+        }
+
+        /**
+         * Removes an {@link ImageView} that is no longer waiting for this
+         * request, along with any callbacks that are specific to it.
+         *
+         * @return {@code true} if nothing is waiting for the request anymore.
+         */
+        public boolean removeView(ImageView view) {
+            mViews.remove(view);
+            for (ImageCallback callback : mCallbacks) {
+                if (callback instanceof ImageViewCallback
+                        && ((ImageViewCallback) callback).getImageView() == view) {
+                    mCallbacks.remove(callback);
+                }
+            }
+            return !mPrime && mViews.isEmpty();
+        }
+
+        /**
+         * Marks the request as no longer wanted by a pre-load or pre-fetch.
+         *
+         * @return {@code true} if nothing is waiting for the request anymore.
          */
-        public ImageRequest(BaseAdapter adapter, String url) {
-            this(url, new BaseAdapterCallback(adapter), true);
+        public boolean unprime() {
+            mPrime = false;
+            return mViews.isEmpty();
         }
 
         /**
-         * Creates an {@link ImageTask} to load a {@link Bitmap} for an
-         * {@link ImageView} in an {@link android.widget.ExpandableListView}.
+         * Stops the request as soon as possible without publishing a result.
          */
-        public ImageRequest(BaseExpandableListAdapter adapter, String url) {
-            this(url, new BaseExpandableListAdapterCallback(adapter), true);
+        public void cancel() {
+            mCancelled = true;
+            mDecoder.cancel();
         }
 
         /**
-         * Creates an {@link ImageTask} to load a {@link Bitmap} for an
-         * {@link ImageView}.
+         * Returns {@code true} if the request was made by
+         * {@link ImageLoader#bind(ImageView, String, Callback)}.
          */
-        public ImageRequest(ImageView view, String url, Callback callback) {
-            this(url, new ImageViewCallback(view, callback), true);
+        public boolean isExplicit() {
+            for (ImageCallback callback : mCallbacks) {
+                if (callback instanceof ImageViewCallback) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         /**
-         * Creates an {@link ImageTask} to prime the cache.
+         * Returns {@code true} if none of the callbacks want the result.
          */
-        public ImageRequest(String url, boolean loadBitmap) {
-            this(url, null, loadBitmap);
+        private boolean unwanted() {
+            if (mCancelled) {
+                return true;
+            }
+            if (mPrime) {
+                return false;
+            }
+            for (ImageCallback callback : mCallbacks) {
+                if (!callback.unwanted()) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         private Bitmap loadImage(URL url) throws IOException {
+            ThumbnailCache thumbnails = mSpec != null ? mThumbnails : null;
+            if (thumbnails != null) {
+                mFetchTime = SystemClock.uptimeMillis();
+                Bitmap bitmap = thumbnails.get(mUrl, mSpec, mBitmapPool);
+                if (bitmap != null) {
+                    mThumbnailHitCount.incrementAndGet();
+                    return bitmap;
+                }
+                mFetchTime = 0;
+            }
+            Bitmap bitmap = mSpec != null && mMediaThumbnails != null ? mMediaThumbnails.load(
+                    mUrl, mDecoder) : null;
+            if (bitmap == null && !mCancelled) {
+                bitmap = decodeImage(url);
+            }
+            if (bitmap != null && thumbnails != null && !mCancelled) {
+                thumbnails.put(mUrl, mSpec, bitmap);
+            }
+            return bitmap;
+        }
+
+        private Bitmap decodeImage(URL url) throws IOException {
+            byte[] encoded = mEncodedImages.get(mUrl);
+            if (encoded != null) {
+                mEncodedHitCount.incrementAndGet();
+                mFetchTime = SystemClock.uptimeMillis();
+                Bitmap bitmap = mDecoder.decode(encoded, 0, encoded.length);
+                if (bitmap != null || mCancelled) {
+                    return bitmap;
+                }
+                mEncodedImages.remove(mUrl);
+            }
+
             URLConnection connection = url.openConnection();
-            return (Bitmap) mBitmapContentHandler.getContent(connection);
+            if (mPreviewEnabled && isExplicit()) {
+                mDecoder.setPreviewListener(new BitmapDecoder.PreviewListener() {
+                    public void onPreview(final Bitmap preview) {
+                        mMainHandler.post(new Runnable() {
+                            public void run() {
+                                publishPreview(preview);
+                            }
+                        });
+                    }
+                });
+            }
+            BitmapDecoder.set(mDecoder);
+            try {
+                Bitmap bitmap = (Bitmap) mBitmapContentHandler.getContent(connection);
+                mFetchTime = mDecoder.getReadTime();
+                encoded = mDecoder.takeEncoded();
+                if (encoded != null) {
+                    mEncodedImages.put(mUrl, encoded);
+                }
+                return bitmap;
+            } finally {
+                BitmapDecoder.set(null);
+            }
         }
 
         /**
@@ -767,22 +1785,32 @@ public final class ImageLoader {
          *         be posted, {@code false} otherwise.
          */
         public boolean execute() {
+            mStartTime = SystemClock.uptimeMillis();
+            mFetchTime = 0;
+            boolean result = load();
+
+            // Errors caused by cancellation must not be cached or reported
+            return result && !mCancelled;
+        }
+
+        private boolean load() {
             try {
-                if (mCallback != null) {
-                    if (mCallback.unwanted()) {
-                        return false;
-                    }
+                if (unwanted()) {
+                    return false;
                 }
                 // Check if the last attempt to load the URL had an error
                 mError = getError(mUrl);
                 if (mError != null) {
+                    mCachedError = true;
                     return true;
                 }
 
                 // Check if the Bitmap is already cached in memory
-                mBitmap = getBitmap(mUrl);
+                mBitmap = getBitmap(mKey);
                 if (mBitmap != null) {
-                    // Keep a hard reference until the view has been notified.
+                    // The Bitmap may be evicted and recycled before the result
+                    // is published, so it is looked up again on the UI thread.
+                    mCached = true;
                     return true;
                 }
 
@@ -794,15 +1822,24 @@ public final class ImageLoader {
                     try {
                         mBitmap = loadImage(url);
                     } catch (OutOfMemoryError e) {
-                        // The VM does not always free-up memory as it should,
-                        // so manually invoke the garbage collector
-                        // and try loading the image again.
+                        // Release the memory that can be released
+                        // from this thread, then manually invoke the
+                        // garbage collector (because the VM does not always
+                        // free-up memory as it should) and try loading the
+                        // image again.
+                        mBitmapPool.clear();
+                        mEncodedImages.trimToSize(mEncodedImages.maxSize() / 2);
                         System.gc();
                         mBitmap = loadImage(url);
                     }
                     if (mBitmap == null) {
                         throw new NullPointerException("ContentHandler returned null");
                     }
+                    mDecodeTime = SystemClock.uptimeMillis();
+                    if (mFetchTime == 0) {
+                        // The ContentHandler did not use BitmapDecoder
+                        mFetchTime = mDecodeTime;
+                    }
                     return true;
                 } else {
                     if (mPrefetchContentHandler != null) {
@@ -814,88 +1851,242 @@ public final class ImageLoader {
                     return false;
                 }
             } catch (IOException e) {
-                mError = new ImageError(e);
+                mError = e;
                 return true;
             } catch (RuntimeException e) {
-                mError = new ImageError(e);
+                mError = e;
                 return true;
             } catch (Error e) {
-                mError = new ImageError(e);
+                mError = e;
                 return true;
             }
         }
 
+        /**
+         * Shows a preview in the views waiting for the request, unless the
+         * result has already been published or the request was cancelled.
+         */
+        private void publishPreview(Bitmap preview) {
+            if (!mScheduler.isInFlight(this)) {
+                return;
+            }
+            for (ImageCallback callback : mCallbacks) {
+                callback.sendPreview(preview);
+            }
+        }
+
         public void publishResult() {
-            if (mBitmap != null) {
-                putBitmap(mUrl, mBitmap);
-            } else if (mError != null && !hasError(mUrl)) {
-                Log.e(TAG, "Failed to load " + mUrl, mError.getCause());
+            if (!mHasResult) {
+                mScheduler.finish(this);
+                return;
+            }
+            if (mCached) {
+                mBitmap = getBitmap(mKey);
+                if (mBitmap == null) {
+                    // Evicted since the request was executed; try again.
+                    mCached = false;
+                    mStarted = false;
+                    mScheduler.enqueue(this, false);
+                    return;
+                }
+            } else if (mBitmap != null) {
+                putBitmap(mKey, mBitmap);
+                mErrors.remove(mUrl);
+                recordTimings();
+            } else if (mError != null && !mCachedError && !hasError(mUrl)) {
+                Log.e(TAG, "Failed to load " + mUrl, mError);
                 putError(mUrl, mError);
             }
-            if (mCallback != null) {
-                mCallback.send(mUrl, mBitmap, mError);
+            mScheduler.finish(this);
+            boolean updated = mBitmap != null && mUpdateViewsInPlace && updateViews();
+            for (ImageCallback callback : mCallbacks) {
+                if (updated && callback instanceof AdapterCallback) {
+                    // The adapter does not need to bind the image again
+                    continue;
+                }
+                callback.send(mUrl, mBitmap, mError);
             }
         }
+
+        /**
+         * Records the duration of each stage of a request that loaded an
+         * image.
+         */
+        private void recordTimings() {
+            long now = SystemClock.uptimeMillis();
+            long[] stages = new long[mStageHistograms.length];
+            stages[ImageLoaderStats.Stage.QUEUE.ordinal()] = mStartTime - mRequestTime;
+            stages[ImageLoaderStats.Stage.FETCH.ordinal()] = mFetchTime - mStartTime;
+            stages[ImageLoaderStats.Stage.DECODE.ordinal()] = mDecodeTime - mFetchTime;
+            stages[ImageLoaderStats.Stage.DELIVERY.ordinal()] = now - mDecodeTime;
+            stages[ImageLoaderStats.Stage.TOTAL.ordinal()] = now - mRequestTime;
+            for (int i = 0; i < stages.length; i++) {
+                mStageHistograms[i].record(stages[i]);
+            }
+            ImageLoaderStats.StatsListener listener = mStatsListener;
+            if (listener != null) {
+                listener.onImageDelivered(mUrl, stages);
+            }
+        }
+
+        /**
+         * Assigns the result to the views waiting for an adapter request
+         * that are still bound to it.
+         *
+         * @return {@code true} if at least one view was updated.
+         */
+        private boolean updateViews() {
+            boolean hasAdapter = false;
+            for (ImageCallback callback : mCallbacks) {
+                if (callback instanceof AdapterCallback) {
+                    hasAdapter = true;
+                    break;
+                }
+            }
+            if (!hasAdapter) {
+                return false;
+            }
+            boolean updated = false;
+            for (ImageView view : mViews.keySet()) {
+                if (mKey.equals(mImageViewBinding.get(view))) {
+                    setImageBitmap(view, mBitmap);
+                    updated = true;
+                }
+            }
+            return updated;
+        }
     }
 
     private interface ImageCallback {
         boolean unwanted();
-        void send(String url, Bitmap bitmap, ImageError error);
+        void send(String url, Bitmap bitmap, Throwable error);
+        void sendPreview(Bitmap preview);
     }
 
-    private final class ImageViewCallback implements ImageCallback {
+    /**
+     * A callback that notifies an adapter when the results delivered together
+     * have been sent.
+     */
+    private interface AdapterCallback extends ImageCallback {
+        void notifyDataSetChanged();
+    }
 
-        // TODO: Use WeakReferences?
+    private final class ImageViewCallback implements ImageCallback {
 
-        private final ImageView mImageView;
+        private final WeakReference<ImageView> mImageView;
+        private final String mKey;
         private final Callback mCallback;
 
-        public ImageViewCallback(ImageView imageView, Callback callback) {
-            mImageView = imageView;
+        /**
+         * {@code true} if a preview was assigned to the {@link ImageView}.
+         */
+        private boolean mPreviewShown;
+
+        public ImageViewCallback(ImageView imageView, String key, Callback callback) {
+            mImageView = new WeakReference<ImageView>(imageView);
+            mKey = key;
             mCallback = callback;
         }
 
+        public ImageView getImageView() {
+            return mImageView.get();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof ImageViewCallback) {
+                ImageViewCallback that = (ImageViewCallback) o;
+                ImageView view = mImageView.get();
+                return view != null && view == that.mImageView.get()
+                        && mCallback == that.mCallback;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mImageView.get());
+        }
+
         /** {@inheritDoc} */
         public boolean unwanted() {
-            // Always complete the callback
-            return false;
+            // Changes to the binding cancel the request on the UI thread
+            return mImageView.get() == null;
         }
 
         /** {@inheritDoc} */
-        public void send(String url, Bitmap bitmap, ImageError error) {
-            String binding = mImageViewBinding.get(mImageView);
-            if (!TextUtils.equals(binding, url)) {
+        public void send(String url, Bitmap bitmap, Throwable error) {
+            ImageView view = mImageView.get();
+            if (view == null) {
+                // The ImageView is no longer in use
+                return;
+            }
+            String binding = mImageViewBinding.get(view);
+            if (!TextUtils.equals(binding, mKey)) {
                 // The ImageView has been unbound or bound to a
                 // different URL since the task was started.
                 return;
             }
             if (bitmap != null) {
-                mImageView.setImageBitmap(bitmap);
+                setImageBitmap(view, bitmap);
                 if (mCallback != null) {
-                    mCallback.onImageLoaded(mImageView, url);
+                    mCallback.onImageLoaded(view, url);
                 }
             } else if (error != null) {
+                if (mPreviewShown) {
+                    setImageBitmap(view, null);
+                }
                 if (mCallback != null) {
-                    mCallback.onImageError(mImageView, url, error.getCause());
+                    mCallback.onImageError(view, url, error);
                 }
             }
         }
+
+        /** {@inheritDoc} */
+        public void sendPreview(Bitmap preview) {
+            ImageView view = mImageView.get();
+            if (view != null && TextUtils.equals(mImageViewBinding.get(view), mKey)) {
+                setImageBitmap(view, preview);
+                mPreviewShown = true;
+            }
+        }
     }
 
-    private static final class BaseAdapterCallback implements ImageCallback {
+    private final class BaseAdapterCallback implements AdapterCallback {
         private final WeakReference<BaseAdapter> mAdapter;
 
         public BaseAdapterCallback(BaseAdapter adapter) {
             mAdapter = new WeakReference<BaseAdapter>(adapter);
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof BaseAdapterCallback) {
+                BaseAdapter adapter = mAdapter.get();
+                return adapter != null && adapter == ((BaseAdapterCallback) o).mAdapter.get();
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mAdapter.get());
+        }
+
         /** {@inheritDoc} */
         public boolean unwanted() {
             return mAdapter.get() == null;
         }
 
         /** {@inheritDoc} */
-        public void send(String url, Bitmap bitmap, ImageError error) {
+        public void send(String url, Bitmap bitmap, Throwable error) {
+            mChangedAdapters.add(this);
+        }
+
+        /** {@inheritDoc} */
+        public void notifyDataSetChanged() {
             BaseAdapter adapter = mAdapter.get();
             if (adapter == null) {
                 // The adapter is no longer in use
@@ -911,9 +2102,14 @@ public final class ImageLoader {
                 // For example: when the adapter cursor is deactivated.
             }
         }
+
+        /** {@inheritDoc} */
+        public void sendPreview(Bitmap preview) {
+            // Rows are rebound from the cache, which never contains previews
+        }
     }
 
-    private static final class BaseExpandableListAdapterCallback implements ImageCallback {
+    private final class BaseExpandableListAdapterCallback implements AdapterCallback {
 
         private final WeakReference<BaseExpandableListAdapter> mAdapter;
 
@@ -921,13 +2117,34 @@ public final class ImageLoader {
             mAdapter = new WeakReference<BaseExpandableListAdapter>(adapter);
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof BaseExpandableListAdapterCallback) {
+                BaseExpandableListAdapter adapter = mAdapter.get();
+                BaseExpandableListAdapterCallback that = (BaseExpandableListAdapterCallback) o;
+                return adapter != null && adapter == that.mAdapter.get();
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mAdapter.get());
+        }
+
         /** {@inheritDoc} */
         public boolean unwanted() {
             return mAdapter.get() == null;
         }
 
         /** {@inheritDoc} */
-        public void send(String url, Bitmap bitmap, ImageError error) {
+        public void send(String url, Bitmap bitmap, Throwable error) {
+            mChangedAdapters.add(this);
+        }
+
+        /** {@inheritDoc} */
+        public void notifyDataSetChanged() {
             BaseExpandableListAdapter adapter = mAdapter.get();
             if (adapter == null) {
                 // The adapter is no longer in use
@@ -943,6 +2160,11 @@ public final class ImageLoader {
                 // For example: when the adapter cursor is deactivated.
             }
         }
+
+        /** {@inheritDoc} */
+        public void sendPreview(Bitmap preview) {
+            // Rows are rebound from the cache, which never contains previews
+        }
     }
 
     private class ImageTask extends AsyncTask<ImageRequest, ImageRequest, Void> {
@@ -977,17 +2199,12 @@ public final class ImageLoader {
             }
         }
 
-        @Override
-        protected void onPreExecute() {
-            mActiveTaskCount++;
-        }
-
         @Override
         protected Void doInBackground(ImageRequest... requests) {
             for (ImageRequest request : requests) {
-                if (request.execute()) {
-                    publishProgress(request);
-                }
+                // Always publish so that the request is no longer in flight
+                request.mHasResult = request.execute();
+                publishProgress(request);
             }
             return null;
         }
@@ -995,42 +2212,20 @@ public final class ImageLoader {
         @Override
         protected void onProgressUpdate(ImageRequest... values) {
             for (ImageRequest request : values) {
-                request.publishResult();
+                onRequestCompleted(request);
             }
         }
 
         @Override
         protected void onPostExecute(Void result) {
-            mActiveTaskCount--;
-            flushRequests();
+            mScheduler.onTaskFinished();
         }
-    }
-
-    private static class ImageError {
-        private static final int TIMEOUT = 2 * 60 * 1000; // Two minutes
 
-        private final Throwable mCause;
-
-        private final long mTimestamp;
-
-        public ImageError(Throwable cause) {
-            if (cause == null) {
-                throw new NullPointerException();
-            }
-            mCause = cause;
-            mTimestamp = now();
-        }
-
-        public boolean isExpired() {
-            return (now() - mTimestamp) > TIMEOUT;
-        }
-
-        public Throwable getCause() {
-            return mCause;
-        }
-
-        private static long now() {
-            return SystemClock.elapsedRealtime();
+        @Override
+        protected void onCancelled() {
+            // Called instead of onPostExecute(Void)
+            // when the task was interrupted.
+            mScheduler.onTaskFinished();
         }
     }
 }
@@ -0,0 +1,310 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+/**
+ * A snapshot of the statistics of an {@link ImageLoader}.
+ * <p>
+ * The time spent by each image is split into stages, which helps decide
+ * whether slow images are caused by waiting in the queue (increase the task
+ * limit), by the network or disk (pre-fetch more), by decoding (load smaller
+ * images) or by the main thread.
+ *
+ * @see ImageLoader#getStats()
+ */
+public final class ImageLoaderStats {
+
+    /**
+     * The stages of loading an image.
+     */
+    public static enum Stage {
+        /**
+         * From the request to the start of a task.
+         */
+        QUEUE,
+        /**
+         * From the start of the task until the encoded image has been read.
+         */
+        FETCH,
+        /**
+         * From the end of the fetch until the image has been decoded.
+         */
+        DECODE,
+        /**
+         * From the end of the decode until the image has been delivered on
+         * the main thread.
+         */
+        DELIVERY,
+        /**
+         * From the request until the image has been delivered.
+         */
+        TOTAL
+    }
+
+    /**
+     * A snapshot of a histogram of durations in milliseconds.
+     * <p>
+     * Bucket {@code i} counts durations from {@code 2^(i-1)} (or {@code 0})
+     * up to {@code 2^i} milliseconds, exclusive, and the last bucket counts
+     * all longer durations.
+     */
+    public static final class Histogram {
+
+        private final long[] mCounts;
+
+        private final long mCount;
+
+        private final long mTotal;
+
+        Histogram(long[] counts, long total) {
+            mCounts = counts;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            mCount = count;
+            mTotal = total;
+        }
+
+        /**
+         * Returns the number of durations recorded.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns the mean duration in milliseconds, or {@code 0} if none were
+         * recorded.
+         */
+        public long getMean() {
+            return mCount != 0 ? mTotal / mCount : 0;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile in milliseconds, or
+         * {@code 0} if no durations were recorded.
+         *
+         * @param percentile a value between {@code 0} and {@code 100}.
+         * @return the upper bound of the bucket containing the percentile, or
+         *         {@link Long#MAX_VALUE} if it is in the last bucket.
+         */
+        public long getPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank && seen != 0) {
+                    return LatencyHistogram.getUpperBound(i);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public int getBucketCount() {
+            return mCounts.length;
+        }
+
+        /**
+         * Returns the number of durations recorded in a bucket.
+         */
+        public long getBucket(int bucket) {
+            return mCounts[bucket];
+        }
+
+        /**
+         * Returns the exclusive upper bound of a bucket in milliseconds, or
+         * {@link Long#MAX_VALUE} for the last bucket.
+         */
+        public long getBucketUpperBound(int bucket) {
+            return LatencyHistogram.getUpperBound(bucket);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + mCount + " mean=" + getMean() + "ms p50<" + getPercentile(50)
+                    + "ms p90<" + getPercentile(90) + "ms";
+        }
+    }
+
+    /**
+     * Receives the timings of each image as it is delivered.
+     * <p>
+     * Methods are called on the main thread and should return quickly.
+     *
+     * @see ImageLoader#setStatsListener(StatsListener)
+     */
+    public interface StatsListener {
+        /**
+         * Called when an image that was loaded by a task has been delivered.
+         * Images found in the in-memory cache and errors are not reported.
+         *
+         * @param url the image URL.
+         * @param stageMillis the duration of each {@link Stage}, indexed by
+         *            {@link Stage#ordinal()}.
+         */
+        void onImageDelivered(String url, long[] stageMillis);
+    }
+
+    private final Histogram[] mStages;
+
+    private final long mHits;
+
+    private final long mMisses;
+
+    private final long mEvictions;
+
+    private final long mEncodedHits;
+
+    private final long mThumbnailHits;
+
+    private final long mErrors;
+
+    private final int mQueueDepth;
+
+    private final int mPeakQueueDepth;
+
+    private final long mDroppedRequests;
+
+    private final int mActiveTasks;
+
+    private final long mCacheSize;
+
+    private final long mMaxCacheSize;
+
+    ImageLoaderStats(Histogram[] stages, long hits, long misses, long evictions,
+            long encodedHits, long thumbnailHits, long errors, int queueDepth,
+            int peakQueueDepth, long droppedRequests, int activeTasks, long cacheSize,
+            long maxCacheSize) {
+        mStages = stages;
+        mHits = hits;
+        mMisses = misses;
+        mEvictions = evictions;
+        mEncodedHits = encodedHits;
+        mThumbnailHits = thumbnailHits;
+        mErrors = errors;
+        mQueueDepth = queueDepth;
+        mPeakQueueDepth = peakQueueDepth;
+        mDroppedRequests = droppedRequests;
+        mActiveTasks = activeTasks;
+        mCacheSize = cacheSize;
+        mMaxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Returns the histogram of durations for a stage.
+     */
+    public Histogram getHistogram(Stage stage) {
+        return mStages[stage.ordinal()];
+    }
+
+    /**
+     * Returns the number of binds and pre-loads that found the image in the
+     * in-memory cache.
+     */
+    public long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of binds and pre-loads that did not find the image
+     * in the in-memory cache.
+     */
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the number of images evicted from the in-memory cache to make
+     * room for others or to release memory.
+     */
+    public long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * Returns the number of images decoded from the in-memory cache of
+     * encoded images.
+     */
+    public long getEncodedHitCount() {
+        return mEncodedHits;
+    }
+
+    /**
+     * Returns the number of images loaded from the {@link ThumbnailCache}.
+     */
+    public long getThumbnailHitCount() {
+        return mThumbnailHits;
+    }
+
+    /**
+     * Returns the number of requests that failed.
+     */
+    public long getErrorCount() {
+        return mErrors;
+    }
+
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public int getPeakQueueDepth() {
+        return mPeakQueueDepth;
+    }
+
+    public long getDroppedRequestCount() {
+        return mDroppedRequests;
+    }
+
+    public int getActiveTaskCount() {
+        return mActiveTasks;
+    }
+
+    /**
+     * Returns the size of the images in the in-memory cache, in bytes.
+     */
+    public long getCacheSize() {
+        return mCacheSize;
+    }
+
+    public long getMaxCacheSize() {
+        return mMaxCacheSize;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("hits=").append(mHits);
+        builder.append(" misses=").append(mMisses);
+        builder.append(" evictions=").append(mEvictions);
+        builder.append(" encodedHits=").append(mEncodedHits);
+        builder.append(" thumbnailHits=").append(mThumbnailHits);
+        builder.append(" errors=").append(mErrors);
+        builder.append(" queue=").append(mQueueDepth);
+        builder.append(" peakQueue=").append(mPeakQueueDepth);
+        builder.append(" dropped=").append(mDroppedRequests);
+        builder.append(" active=").append(mActiveTasks);
+        builder.append(" cache=").append(mCacheSize).append('/').append(mMaxCacheSize);
+        for (Stage stage : Stage.values()) {
+            builder.append('\n').append(stage).append(": ").append(getHistogram(stage));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,209 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+
+/**
+ * Describes how an image should be decoded for display.
+ * <p>
+ * Images are scaled down to fit within the width and height, preserving their
+ * aspect ratio; they are never scaled up. They are then passed through the
+ * spec's {@link BitmapTransformation BitmapTransformations}, if any, in order.
+ * The same URL loaded with different specs is cached separately.
+ *
+ * @see ImageLoader#bind(android.widget.ImageView, String, ImageSpec,
+ *      ImageLoader.Callback)
+ * @see ThumbnailCache
+ */
+public final class ImageSpec {
+
+    private static final BitmapTransformation[] NO_TRANSFORMATIONS = {};
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final Bitmap.Config mConfig;
+
+    private final BitmapTransformation[] mTransformations;
+
+    /**
+     * The description returned by {@link #toString()}, which is part of cache
+     * keys.
+     */
+    private final String mString;
+
+    /**
+     * Constructor.
+     *
+     * @param width the maximum width in pixels.
+     * @param height the maximum height in pixels.
+     * @param config the configuration of the decoded {@link Bitmap}, for
+     *            example {@link Bitmap.Config#RGB_565} to halve the memory used
+     *            by opaque images.
+     * @throws IllegalArgumentException if the width or height is not positive.
+     * @throws NullPointerException if the configuration is {@code null}.
+     */
+    public ImageSpec(int width, int height, Bitmap.Config config) {
+        this(width, height, config, NO_TRANSFORMATIONS);
+    }
+
+    private ImageSpec(int width, int height, Bitmap.Config config,
+            BitmapTransformation[] transformations) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Width and height must be positive");
+        }
+        if (config == null) {
+            throw new NullPointerException("Config is null");
+        }
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mTransformations = transformations;
+        StringBuilder builder = new StringBuilder();
+        builder.append(width).append('x').append(height).append(' ').append(config);
+        for (BitmapTransformation transformation : transformations) {
+            builder.append(" | ").append(transformation.getKey());
+        }
+        mString = builder.toString();
+    }
+
+    /**
+     * Creates a spec for {@link Bitmap.Config#ARGB_8888} images.
+     */
+    public ImageSpec(int width, int height) {
+        this(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public Bitmap.Config getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Returns a spec that also applies a transformation after this spec's
+     * transformations.
+     *
+     * @throws NullPointerException if the transformation or its key is
+     *             {@code null}.
+     */
+    public ImageSpec withTransformation(BitmapTransformation transformation) {
+        if (transformation.getKey() == null) {
+            throw new NullPointerException("Transformation key is null");
+        }
+        BitmapTransformation[] transformations =
+                new BitmapTransformation[mTransformations.length + 1];
+        System.arraycopy(mTransformations, 0, transformations, 0, mTransformations.length);
+        transformations[mTransformations.length] = transformation;
+        return new ImageSpec(mWidth, mHeight, mConfig, transformations);
+    }
+
+    /**
+     * Returns the number of transformations applied by this spec.
+     */
+    public int getTransformationCount() {
+        return mTransformations.length;
+    }
+
+    public BitmapTransformation getTransformation(int index) {
+        return mTransformations[index];
+    }
+
+    /**
+     * Returns {@code true} if an image of the given size is larger than this
+     * spec and must be scaled down.
+     */
+    boolean isLarger(int width, int height) {
+        return width > mWidth || height > mHeight;
+    }
+
+    /**
+     * Returns the largest power of two by which an image of the given size can
+     * be subsampled while decoding without becoming smaller than its scaled
+     * size.
+     */
+    int getSampleSize(int width, int height) {
+        int sampleSize = 1;
+        // The tighter dimension decides the scale, so subsampling is allowed
+        // as long as either dimension stays at least as large as the spec.
+        while ((long) mWidth * sampleSize * 2 <= width
+                || (long) mHeight * sampleSize * 2 <= height) {
+            if (width / (sampleSize * 2) < 1 || height / (sampleSize * 2) < 1) {
+                break;
+            }
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the width of an image of the given size once it is scaled to fit
+     * this spec.
+     */
+    int getScaledWidth(int width, int height) {
+        if (!isLarger(width, height)) {
+            return width;
+        } else if ((long) width * mHeight >= (long) height * mWidth) {
+            return mWidth;
+        } else {
+            return (int) Math.max(1, (long) width * mHeight / height);
+        }
+    }
+
+    /**
+     * Returns the height of an image of the given size once it is scaled to
+     * fit this spec.
+     */
+    int getScaledHeight(int width, int height) {
+        if (!isLarger(width, height)) {
+            return height;
+        } else if ((long) width * mHeight >= (long) height * mWidth) {
+            return (int) Math.max(1, (long) height * mWidth / width);
+        } else {
+            return mHeight;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof ImageSpec) {
+            // Transformations are compared by key
+            ImageSpec that = (ImageSpec) o;
+            return mString.equals(that.mString);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return mString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mString;
+    }
+}
@@ -0,0 +1,81 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in milliseconds.
+ * <p>
+ * Bucket {@code i} counts durations below {@code 2^i} milliseconds (and at
+ * least {@code 2^(i-1)}), and the last bucket counts everything longer, so
+ * the histogram covers a millisecond to over half a minute with a fixed,
+ * small number of counters.
+ */
+class LatencyHistogram {
+
+    static final int BUCKET_COUNT = 17;
+
+    /**
+     * Returns the exclusive upper bound of a bucket in milliseconds, or
+     * {@link Long#MAX_VALUE} for the last bucket.
+     */
+    static long getUpperBound(int bucket) {
+        return bucket < BUCKET_COUNT - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    static int getBucket(long millis) {
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1 && millis >= getUpperBound(bucket)) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mTotal = new AtomicLong();
+
+    /**
+     * Records a duration. Negative durations are recorded as {@code 0}.
+     */
+    public void record(long millis) {
+        millis = Math.max(0, millis);
+        mBuckets.incrementAndGet(getBucket(millis));
+        mTotal.addAndGet(millis);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mTotal.set(0);
+    }
+
+    /**
+     * Returns a copy of the counts. Concurrent updates may be partially
+     * included.
+     */
+    public ImageLoaderStats.Histogram snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(i);
+        }
+        return new ImageLoaderStats.Histogram(counts, mTotal.get());
+    }
+}
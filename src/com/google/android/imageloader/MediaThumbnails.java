@@ -0,0 +1,248 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Loads small versions of {@link MediaStore} images without decoding the
+ * originals.
+ * <p>
+ * The thumbnail embedded in the EXIF data by the camera is used if it is large
+ * enough for the {@link ImageSpec}, followed by the mini thumbnail generated
+ * by the media scanner. Thumbnails with a different aspect ratio (for example,
+ * the cropped micro thumbnails) are never used.
+ * <p>
+ * Neither thumbnail can be read before Android 2.0 (API level 5), where the
+ * original is always decoded.
+ */
+class MediaThumbnails {
+
+    private static final int SDK = Integer.parseInt(Build.VERSION.SDK);
+
+    private static final String VOLUME_EXTERNAL = "external";
+
+    private static final String[] IMAGE_PROJECTION = {
+        MediaStore.Images.Media.DATA
+    };
+
+    private static final String[] THUMBNAIL_PROJECTION = {
+            MediaStore.Images.Thumbnails.DATA, MediaStore.Images.Thumbnails.WIDTH,
+            MediaStore.Images.Thumbnails.HEIGHT
+    };
+
+    /**
+     * The largest relative difference between the aspect ratios of a
+     * thumbnail and its original.
+     */
+    private static final float MAX_ASPECT_ERROR = 0.02f;
+
+    /**
+     * Returns the ID of an image in the {@link MediaStore}, or {@code -1} if
+     * the URI does not identify one.
+     */
+    static long getImageId(Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                || !MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+            return -1;
+        }
+        // For example, content://media/external/images/media/42
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 4 || !"images".equals(segments.get(1))
+                || !"media".equals(segments.get(2))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(segments.get(3));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns {@code true} if a thumbnail has the same shape as its original
+     * and is at least as large as the target size.
+     */
+    static boolean isUsable(int width, int height, int originalWidth, int originalHeight,
+            int targetWidth, int targetHeight) {
+        if (width < targetWidth || height < targetHeight) {
+            return false;
+        }
+        float aspect = (float) width / height;
+        float originalAspect = (float) originalWidth / originalHeight;
+        return Math.abs(aspect - originalAspect) <= originalAspect * MAX_ASPECT_ERROR;
+    }
+
+    private final ContentResolver mResolver;
+
+    public MediaThumbnails(ContentResolver resolver) {
+        if (resolver == null) {
+            throw new NullPointerException();
+        }
+        mResolver = resolver;
+    }
+
+    /**
+     * Loads a thumbnail of a {@link MediaStore} image.
+     *
+     * @param url the image URL.
+     * @param decoder the decoder for the request, which scales the thumbnail
+     *            to the {@link ImageSpec}.
+     * @return the thumbnail, or {@code null} if the URL is not a
+     *         {@link MediaStore} image or it has no thumbnail large enough.
+     */
+    public Bitmap load(String url, BitmapDecoder decoder) throws IOException {
+        ImageSpec spec = decoder.getSpec();
+        if (spec == null || SDK < 5) {
+            return null;
+        }
+        Uri uri = Uri.parse(url);
+        long id = getImageId(uri);
+        if (id == -1) {
+            return null;
+        }
+        String path = getPath(uri);
+        if (path == null) {
+            return null;
+        }
+
+        // Reading the dimensions only reads the start of the file
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        if (width <= 0 || height <= 0 || !spec.isLarger(width, height)) {
+            // Small originals are as cheap to decode as a thumbnail
+            return null;
+        }
+        int targetWidth = spec.getScaledWidth(width, height);
+        int targetHeight = spec.getScaledHeight(width, height);
+
+        boolean external = VOLUME_EXTERNAL.equals(uri.getPathSegments().get(0));
+        return loadThumbnail(id, path, external, width, height, targetWidth, targetHeight,
+                decoder);
+    }
+
+    /**
+     * Loads the EXIF thumbnail of an image, or its mini thumbnail if the EXIF
+     * thumbnail cannot be used. Only images on the external volume have mini
+     * thumbnails.
+     */
+    Bitmap loadThumbnail(long id, String path, boolean external, int width, int height,
+            int targetWidth, int targetHeight, BitmapDecoder decoder) throws IOException {
+        Bitmap bitmap = loadExifThumbnail(path, width, height, targetWidth, targetHeight,
+                decoder);
+        if (bitmap == null && external) {
+            bitmap = loadMiniThumbnail(id, width, height, targetWidth, targetHeight, decoder);
+        }
+        return bitmap;
+    }
+
+    private String getPath(Uri uri) {
+        Cursor cursor = mResolver.query(uri, IMAGE_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    Bitmap loadExifThumbnail(String path, int width, int height, int targetWidth,
+            int targetHeight, BitmapDecoder decoder) {
+        byte[] thumbnail;
+        try {
+            thumbnail = new ExifInterface(path).getThumbnail();
+        } catch (IOException e) {
+            return null;
+        }
+        if (thumbnail == null) {
+            return null;
+        }
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, bounds);
+        if (!isUsable(bounds.outWidth, bounds.outHeight, width, height, targetWidth,
+                targetHeight)) {
+            return null;
+        }
+        return decoder.decode(thumbnail, 0, thumbnail.length);
+    }
+
+    Bitmap loadMiniThumbnail(long id, int width, int height, int targetWidth,
+            int targetHeight, BitmapDecoder decoder) throws IOException {
+        String path;
+        int thumbnailWidth;
+        int thumbnailHeight;
+        Cursor cursor = MediaStore.Images.Thumbnails.queryMiniThumbnail(mResolver, id,
+                MediaStore.Images.Thumbnails.MINI_KIND, THUMBNAIL_PROJECTION);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            path = cursor.getString(0);
+            thumbnailWidth = cursor.getInt(1);
+            thumbnailHeight = cursor.getInt(2);
+        } finally {
+            cursor.close();
+        }
+        if (path == null) {
+            return null;
+        }
+        if (thumbnailWidth <= 0 || thumbnailHeight <= 0) {
+            // The media scanner does not always record the dimensions
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, bounds);
+            thumbnailWidth = bounds.outWidth;
+            thumbnailHeight = bounds.outHeight;
+        }
+        if (!isUsable(thumbnailWidth, thumbnailHeight, width, height, targetWidth,
+                targetHeight)) {
+            return null;
+        }
+        FileInputStream input;
+        try {
+            input = new FileInputStream(path);
+        } catch (IOException e) {
+            // The thumbnail was deleted since the media scanner ran
+            return null;
+        }
+        try {
+            return decoder.decode(input);
+        } finally {
+            input.close();
+        }
+    }
+}
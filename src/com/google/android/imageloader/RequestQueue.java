@@ -0,0 +1,201 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A bounded queue of pending requests.
+ * <p>
+ * Requests added with {@link #addFirst(Object)} are served newest first,
+ * before any requests added with {@link #addLast(Object)}, which are served
+ * oldest first. This suits adapter requests, where the most recently bound
+ * rows are the ones most likely to still be on screen.
+ * <p>
+ * When the queue is full, the oldest droppable request added with
+ * {@link #addFirst(Object)} is dropped, followed by the oldest droppable
+ * request added with {@link #addLast(Object)}. Requests that the
+ * {@link Policy} does not allow to be dropped are never dropped, so the queue
+ * can grow beyond its capacity if it only contains such requests.
+ * <p>
+ * This class is not thread-safe.
+ */
+class RequestQueue<E> {
+
+    /**
+     * Decides which requests can be dropped and is notified when they are.
+     */
+    public interface Policy<E> {
+        /**
+         * Returns {@code true} if the request may be dropped when the queue is
+         * full.
+         */
+        boolean isDroppable(E request);
+
+        /**
+         * Called after a request has been dropped from the queue.
+         */
+        void onDropped(E request);
+    }
+
+    private final Policy<E> mPolicy;
+
+    /**
+     * Requests served newest first, oldest at the head.
+     */
+    private final LinkedList<E> mStack;
+
+    /**
+     * Requests served oldest first, oldest at the head.
+     */
+    private final LinkedList<E> mQueue;
+
+    private int mCapacity;
+
+    private int mPeakSize;
+
+    private long mDroppedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the number of requests above which droppable requests
+     *            are dropped.
+     * @param policy decides which requests can be dropped.
+     */
+    public RequestQueue(int capacity, Policy<E> policy) {
+        if (policy == null) {
+            throw new NullPointerException("Policy is null");
+        }
+        mPolicy = policy;
+        mStack = new LinkedList<E>();
+        mQueue = new LinkedList<E>();
+        setCapacity(capacity);
+    }
+
+    /**
+     * Sets the capacity, dropping requests if there are too many.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        mCapacity = capacity;
+        trim();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Adds a request to be served before all other requests currently in the
+     * queue.
+     */
+    public void addFirst(E request) {
+        mStack.addLast(request);
+        onAdded();
+    }
+
+    /**
+     * Adds a request to be served after all other requests currently in the
+     * queue.
+     */
+    public void addLast(E request) {
+        mQueue.addLast(request);
+        onAdded();
+    }
+
+    /**
+     * Removes and returns the next request, or returns {@code null} if the
+     * queue is empty.
+     */
+    public E poll() {
+        if (!mStack.isEmpty()) {
+            return mStack.removeLast();
+        } else {
+            return mQueue.poll();
+        }
+    }
+
+    /**
+     * Removes a request from the queue without notifying the {@link Policy}.
+     *
+     * @return {@code true} if the request was in the queue.
+     */
+    public boolean remove(E request) {
+        return mStack.remove(request) || mQueue.remove(request);
+    }
+
+    public boolean isEmpty() {
+        return mStack.isEmpty() && mQueue.isEmpty();
+    }
+
+    public int size() {
+        return mStack.size() + mQueue.size();
+    }
+
+    /**
+     * Returns the largest number of requests that were in the queue at once.
+     */
+    public int getPeakSize() {
+        return mPeakSize;
+    }
+
+    /**
+     * Returns the total number of requests dropped because the queue was
+     * full.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    private void onAdded() {
+        trim();
+        mPeakSize = Math.max(mPeakSize, size());
+    }
+
+    private void trim() {
+        while (size() > mCapacity) {
+            E dropped = dropOldest(mStack.iterator());
+            if (dropped == null) {
+                dropped = dropOldest(mQueue.iterator());
+            }
+            if (dropped == null) {
+                // Nothing can be dropped
+                return;
+            }
+            mDroppedCount++;
+            mPolicy.onDropped(dropped);
+        }
+    }
+
+    /**
+     * Removes the first droppable request returned by an iterator.
+     */
+    private E dropOldest(Iterator<E> oldestFirst) {
+        while (oldestFirst.hasNext()) {
+            E request = oldestFirst.next();
+            if (mPolicy.isDroppable(request)) {
+                oldestFirst.remove();
+                return request;
+            }
+        }
+        return null;
+    }
+}
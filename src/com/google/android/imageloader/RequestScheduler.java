@@ -0,0 +1,213 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the requests that are queued or running and starts them when there
+ * is a free task.
+ * <p>
+ * Requests are keyed, so that a request for an image that is already queued
+ * or running can join the existing request instead of loading the image
+ * again. Waiting requests are held in a {@link RequestQueue}.
+ * <p>
+ * This class does not depend on the Android framework, so that it can be
+ * tested and benchmarked on a plain JVM. It is not thread-safe.
+ */
+class RequestScheduler<R> {
+
+    /**
+     * Provides the keys of requests and starts them.
+     */
+    public interface Callback<R> {
+        /**
+         * Returns the key that identifies requests for the same image.
+         */
+        String getKey(R request);
+
+        /**
+         * Returns {@code true} if the request may be dropped when the queue is
+         * full.
+         */
+        boolean isDroppable(R request);
+
+        /**
+         * Called after a request has been dropped from the queue and is no
+         * longer in flight.
+         */
+        void onDropped(R request);
+
+        /**
+         * Starts a request. {@link RequestScheduler#onTaskFinished()} must be
+         * called once the task running the request has finished.
+         */
+        void start(R request);
+    }
+
+    private final Callback<R> mCallback;
+
+    /**
+     * Requests that are queued or running, by key.
+     */
+    private final Map<String, R> mInFlight;
+
+    private final RequestQueue<R> mQueue;
+
+    private final int mMaxTaskCount;
+
+    private int mActiveTaskCount;
+
+    /**
+     * Constructor.
+     *
+     * @param taskLimit the maximum number of requests to run at once.
+     * @param queueCapacity the capacity of the {@link RequestQueue}.
+     * @param callback provides the keys of requests and starts them.
+     */
+    public RequestScheduler(int taskLimit, int queueCapacity, Callback<R> callback) {
+        if (taskLimit < 1) {
+            throw new IllegalArgumentException("Task limit must be positive");
+        }
+        if (callback == null) {
+            throw new NullPointerException("Callback is null");
+        }
+        mMaxTaskCount = taskLimit;
+        mCallback = callback;
+        mInFlight = new HashMap<String, R>();
+        mQueue = new RequestQueue<R>(queueCapacity, new RequestQueue.Policy<R>() {
+            public boolean isDroppable(R request) {
+                return mCallback.isDroppable(request);
+            }
+
+            public void onDropped(R request) {
+                finish(request);
+                mCallback.onDropped(request);
+            }
+        });
+    }
+
+    /**
+     * Returns the request in flight for a key, or {@code null} if there is
+     * none.
+     */
+    public R get(String key) {
+        return mInFlight.get(key);
+    }
+
+    /**
+     * Adds a new request, replacing any request in flight with the same key.
+     *
+     * @param atFront {@code true} to service the request before those already
+     *            in the queue.
+     */
+    public void submit(R request, boolean atFront) {
+        mInFlight.put(mCallback.getKey(request), request);
+        enqueue(request, atFront);
+    }
+
+    /**
+     * Queues a request that is already in flight again, for example to retry
+     * it.
+     */
+    public void enqueue(R request, boolean atFront) {
+        if (atFront) {
+            mQueue.addFirst(request);
+        } else {
+            mQueue.addLast(request);
+        }
+        flush();
+    }
+
+    /**
+     * Moves a queued request to the front of the queue.
+     *
+     * @return {@code true} if the request was queued, {@code false} if it has
+     *         already started or is not in flight.
+     */
+    public boolean moveToFront(R request) {
+        if (mQueue.remove(request)) {
+            mQueue.addFirst(request);
+            flush();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Removes a request from the queue, if it has not started yet.
+     *
+     * @return {@code true} if the request was queued.
+     */
+    public boolean dequeue(R request) {
+        return mQueue.remove(request);
+    }
+
+    /**
+     * Marks a request as no longer in flight, so that the next request for its
+     * key starts a new request. Has no effect if another request has replaced
+     * it.
+     */
+    public void finish(R request) {
+        String key = mCallback.getKey(request);
+        if (mInFlight.get(key) == request) {
+            mInFlight.remove(key);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the request is the one in flight for its key.
+     */
+    public boolean isInFlight(R request) {
+        return mInFlight.get(mCallback.getKey(request)) == request;
+    }
+
+    /**
+     * Called when a task started by {@link Callback#start(Object)} has
+     * finished, to start the next request.
+     */
+    public void onTaskFinished() {
+        mActiveTaskCount--;
+        flush();
+    }
+
+    /**
+     * Starts queued requests until the queue is empty or the task limit is
+     * reached.
+     */
+    public void flush() {
+        while (mActiveTaskCount < mMaxTaskCount && !mQueue.isEmpty()) {
+            R request = mQueue.poll();
+            mActiveTaskCount++;
+            mCallback.start(request);
+        }
+    }
+
+    public RequestQueue<R> getQueue() {
+        return mQueue;
+    }
+
+    public int getActiveTaskCount() {
+        return mActiveTaskCount;
+    }
+
+    public int getInFlightCount() {
+        return mInFlight.size();
+    }
+}
@@ -0,0 +1,307 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the images of the rows that are about to scroll into view.
+ * <p>
+ * The rows immediately ahead of the visible rows, in the direction of travel,
+ * are pre-loaded into memory, and the rows after those are pre-fetched into a
+ * file-based cache. The faster the user scrolls, the further ahead images are
+ * pre-loaded. Pre-loads and pre-fetches for rows that fall out of the window,
+ * for example when the user changes direction, are cancelled.
+ * <p>
+ * Typically, an {@link android.app.Activity} would create a prefetcher for
+ * the same {@link Cursor} as its adapter and register it with
+ * {@link AbsListView#setOnScrollListener(AbsListView.OnScrollListener)}, or
+ * with
+ * {@link AdapterView#setOnItemSelectedListener(AdapterView.OnItemSelectedListener)}
+ * for a {@link android.widget.Gallery}. Positions are adapter positions, so
+ * subclasses can override {@link #getUrl(int)} if a list has header views or
+ * does not use a {@link Cursor}.
+ * <p>
+ * All methods must be called on the UI thread.
+ *
+ * @see ImageLoader#preload(String)
+ * @see ImageLoader#prefetch(String)
+ */
+public class ScrollPrefetcher implements AbsListView.OnScrollListener,
+        AdapterView.OnItemSelectedListener {
+
+    /**
+     * The default number of rows to pre-load.
+     */
+    public static final int DEFAULT_PRELOAD_COUNT = 6;
+
+    /**
+     * The default number of rows to pre-fetch after the pre-loaded rows.
+     */
+    public static final int DEFAULT_PREFETCH_COUNT = 12;
+
+    /**
+     * How far ahead to look when scrolling quickly, in milliseconds of
+     * scrolling at the current speed.
+     */
+    private static final long LOOKAHEAD_MILLIS = 500;
+
+    private final ImageLoader mImageLoader;
+
+    private Cursor mCursor;
+
+    private int mColumnIndex;
+
+    private ImageSpec mSpec;
+
+    private int mPreloadCount = DEFAULT_PRELOAD_COUNT;
+
+    private int mPrefetchCount = DEFAULT_PREFETCH_COUNT;
+
+    private AbsListView.OnScrollListener mOnScrollListener;
+
+    /**
+     * The URLs requested for the current window.
+     */
+    private Set<String> mRequested = new HashSet<String>();
+
+    private int mFirstVisible = -1;
+
+    private int mVisibleCount;
+
+    private int mTotalCount;
+
+    private long mLastUpdateTime;
+
+    /**
+     * {@code 1} when scrolling towards the end of the list, {@code -1} when
+     * scrolling towards the start.
+     */
+    private int mDirection = 1;
+
+    /**
+     * The smoothed scrolling speed, in rows per second.
+     */
+    private float mVelocity;
+
+    /**
+     * Constructor.
+     *
+     * @param loader the {@link ImageLoader} that loads the images.
+     * @param cursor the {@link Cursor} containing the image URLs, or
+     *            {@code null}.
+     * @param columnIndex the column index of the image URL. The column value
+     *            may be {@code NULL}.
+     * @throws NullPointerException if the {@link ImageLoader} is {@code null}.
+     */
+    public ScrollPrefetcher(ImageLoader loader, Cursor cursor, int columnIndex) {
+        if (loader == null) {
+            throw new NullPointerException();
+        }
+        mImageLoader = loader;
+        mCursor = cursor;
+        mColumnIndex = columnIndex;
+    }
+
+    /**
+     * Changes the {@link Cursor}, for example when the adapter's
+     * {@link Cursor} is changed, and cancels any pre-loads for the old one.
+     */
+    public void setCursor(Cursor cursor, int columnIndex) {
+        mCursor = cursor;
+        mColumnIndex = columnIndex;
+        clear();
+    }
+
+    /**
+     * Sets the size of the window ahead of the visible rows.
+     *
+     * @param preloadCount the number of rows to pre-load into memory. The
+     *            window is extended by up to this many rows when scrolling
+     *            quickly.
+     * @param prefetchCount the number of rows after those to pre-fetch without
+     *            loading them into memory. Pre-fetching should not be used
+     *            unless the {@link ImageLoader} was created with a
+     *            {@link java.net.ContentHandler} that supports persistent
+     *            caching.
+     */
+    public void setWindow(int preloadCount, int prefetchCount) {
+        if (preloadCount < 0 || prefetchCount < 0) {
+            throw new IllegalArgumentException();
+        }
+        mPreloadCount = preloadCount;
+        mPrefetchCount = prefetchCount;
+    }
+
+    /**
+     * Sets the {@link ImageSpec} to pre-load images with, which must match the
+     * one the adapter binds them with.
+     *
+     * @param spec the {@link ImageSpec}, or {@code null} to pre-load images at
+     *            their original size.
+     */
+    public void setImageSpec(ImageSpec spec) {
+        if (spec == null ? mSpec != null : !spec.equals(mSpec)) {
+            clear();
+            mSpec = spec;
+        }
+    }
+
+    /**
+     * Sets a listener to be notified of scroll events after this prefetcher,
+     * because an {@link AbsListView} only has one.
+     */
+    public void setOnScrollListener(AbsListView.OnScrollListener listener) {
+        mOnScrollListener = listener;
+    }
+
+    /**
+     * Cancels all pre-loads and pre-fetches made by this prefetcher, for
+     * example when the {@link android.app.Activity} is stopped.
+     */
+    public void clear() {
+        for (String url : mRequested) {
+            cancel(url);
+        }
+        mRequested.clear();
+        mFirstVisible = -1;
+        mVelocity = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (scrollState == SCROLL_STATE_IDLE) {
+            mVelocity = 0;
+        }
+        if (mOnScrollListener != null) {
+            mOnScrollListener.onScrollStateChanged(view, scrollState);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+            int totalItemCount) {
+        update(firstVisibleItem, visibleItemCount, totalItemCount);
+        if (mOnScrollListener != null) {
+            mOnScrollListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+        update(position, 1, parent.getCount());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onNothingSelected(AdapterView<?> parent) {
+    }
+
+    /**
+     * Updates the window after the visible rows have changed.
+     *
+     * @param firstVisible the position of the first visible row.
+     * @param visibleCount the number of visible rows.
+     * @param totalCount the number of rows.
+     */
+    public void update(int firstVisible, int visibleCount, int totalCount) {
+        if (firstVisible == mFirstVisible && visibleCount == mVisibleCount
+                && totalCount == mTotalCount) {
+            // onScroll is called for every frame, even when the rows have not
+            // changed.
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (mFirstVisible >= 0 && firstVisible != mFirstVisible) {
+            int delta = firstVisible - mFirstVisible;
+            mDirection = delta > 0 ? 1 : -1;
+            long elapsed = Math.max(1, now - mLastUpdateTime);
+            float velocity = Math.abs(delta) * 1000f / elapsed;
+            mVelocity = (mVelocity + velocity) / 2;
+        }
+        mFirstVisible = firstVisible;
+        mVisibleCount = visibleCount;
+        mTotalCount = totalCount;
+        mLastUpdateTime = now;
+
+        int extra = Math.min(mPreloadCount, (int) (mVelocity * LOOKAHEAD_MILLIS / 1000));
+        int preloadCount = mPreloadCount + extra;
+
+        // Rows are requested nearest first, because the queue serves
+        // pre-loads in the order they are made.
+        Set<String> requested = new HashSet<String>();
+        int position = mDirection > 0 ? firstVisible + visibleCount : firstVisible - 1;
+        for (int i = 0; i < preloadCount + mPrefetchCount; i++, position += mDirection) {
+            if (position < 0 || position >= totalCount) {
+                break;
+            }
+            String url = getUrl(position);
+            if (TextUtils.isEmpty(url)) {
+                continue;
+            }
+            if (i < preloadCount) {
+                mImageLoader.preload(url, mSpec);
+            } else {
+                mImageLoader.prefetch(url);
+            }
+            requested.add(url);
+        }
+
+        for (String url : mRequested) {
+            if (!requested.contains(url)) {
+                cancel(url);
+            }
+        }
+        mRequested = requested;
+    }
+
+    private void cancel(String url) {
+        mImageLoader.cancelPreload(url, mSpec);
+        if (mSpec != null) {
+            // Pre-fetches are made without an ImageSpec
+            mImageLoader.cancelPreload(url);
+        }
+    }
+
+    /**
+     * Returns the image URL for an adapter position, or {@code null} if it has
+     * none.
+     */
+    protected String getUrl(int position) {
+        Cursor cursor = mCursor;
+        if (cursor != null && !cursor.isClosed() && cursor.moveToPosition(position)) {
+            return cursor.getString(mColumnIndex);
+        } else {
+            return null;
+        }
+    }
+}
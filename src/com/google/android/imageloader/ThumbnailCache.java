@@ -0,0 +1,349 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A file-based cache of images that have already been scaled down to an
+ * {@link ImageSpec}.
+ * <p>
+ * Thumbnails are stored as uncompressed pixels, so loading one only costs a
+ * small sequential read and a copy, instead of reading and decoding the
+ * full-size original again. The cache is bounded by the total size of its
+ * files and removes the least recently used files first.
+ * <p>
+ * Only images loaded with an {@link ImageSpec} are stored.
+ *
+ * @see ImageLoader#setThumbnailCache(ThumbnailCache)
+ */
+public class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache";
+
+    private static final int MAGIC = 0x494c5443; // "ILTC"
+
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".thumb";
+
+    private static final String TEMP_PREFIX = "tmp";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * When the cache is full, files are removed until it is this fraction of
+     * its maximum size, so that removal does not happen on every write.
+     */
+    private static final float TRIM_FRACTION = 0.75f;
+
+    private final File mDirectory;
+
+    private final long mMaxSize;
+
+    /**
+     * The total size of the files, or {@code -1} if it has not been computed
+     * yet.
+     */
+    private long mSize = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory to store thumbnails in. It is created if
+     *            it does not exist and should not be used for anything else.
+     * @param maxSize the maximum total size of the thumbnails, in bytes.
+     * @throws NullPointerException if the directory is {@code null}.
+     */
+    public ThumbnailCache(File directory, long maxSize) {
+        if (directory == null) {
+            throw new NullPointerException("Directory is null");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Deletes all thumbnails.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mSize = 0;
+    }
+
+    /**
+     * Returns the thumbnail of a URL, or {@code null} if it is not cached.
+     *
+     * @param pool a pool to take the {@link Bitmap} from, or {@code null}.
+     */
+    Bitmap get(String url, ImageSpec spec, BitmapPool pool) {
+        File file = getFile(url, spec);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                Bitmap bitmap = read(input, file.length(), pool);
+                if (bitmap != null) {
+                    // Keep track of the least recently used files
+                    file.setLastModified(System.currentTimeMillis());
+                } else {
+                    delete(file);
+                }
+                return bitmap;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read thumbnail", e);
+            delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the thumbnail of a URL.
+     * <p>
+     * The configuration of the bitmap is stored with its pixels and restored
+     * by {@link #get(String, ImageSpec, BitmapPool)}, because it may differ
+     * from the one preferred by the {@link ImageSpec}: for example, images
+     * with transparency are decoded as {@link Bitmap.Config#ARGB_8888}.
+     */
+    void put(String url, ImageSpec spec, Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == null) {
+            // The pixel format is not supported
+            return;
+        }
+        File file = getFile(url, spec);
+        File temp = null;
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Failed to create directory");
+            }
+            // Write to a temporary file first,
+            // so that readers never see a partial file.
+            temp = File.createTempFile(TEMP_PREFIX, null, mDirectory);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            try {
+                write(output, bitmap, config);
+            } finally {
+                output.close();
+            }
+            long previous = file.length();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename thumbnail");
+            }
+            temp = null;
+            onWritten(file.length() - previous);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write thumbnail", e);
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads a thumbnail.
+     *
+     * @param fileLength the length of the file, which bounds the number of
+     *            bytes of pixels.
+     * @return the thumbnail, or {@code null} if the file is not valid.
+     */
+    private static Bitmap read(DataInputStream input, long fileLength, BitmapPool pool)
+            throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            return null;
+        }
+        int width = input.readInt();
+        int height = input.readInt();
+        Bitmap.Config config;
+        try {
+            config = Bitmap.Config.valueOf(input.readUTF());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (width < 1 || height < 1) {
+            return null;
+        }
+        int length = input.readInt();
+        if (length < 0 || length > fileLength || length > (long) width * height * 4) {
+            // Do not allocate a buffer for a corrupt length
+            return null;
+        }
+        byte[] pixels = new byte[length];
+        input.readFully(pixels);
+
+        Bitmap bitmap = pool != null ? pool.get(width, height, config) : null;
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+        if (bitmap.getRowBytes() * height != pixels.length) {
+            if (pool == null || !pool.put(bitmap)) {
+                bitmap.recycle();
+            }
+            return null;
+        }
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+        return bitmap;
+    }
+
+    private static void write(DataOutputStream output, Bitmap bitmap, Bitmap.Config config)
+            throws IOException {
+        ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(bitmap.getWidth());
+        output.writeInt(bitmap.getHeight());
+        output.writeUTF(config.name());
+        output.writeInt(pixels.capacity());
+        output.write(pixels.array(), 0, pixels.capacity());
+    }
+
+    private File getFile(String url, ImageSpec spec) {
+        return new File(mDirectory, digest(url + " " + spec) + SUFFIX);
+    }
+
+    /**
+     * Returns the thumbnail files, excluding the temporary files of writes in
+     * progress.
+     */
+    private File[] listThumbnails() {
+        return mDirectory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+    }
+
+    private synchronized void delete(File file) {
+        long length = file.length();
+        if (file.delete() && mSize >= 0) {
+            mSize -= length;
+        }
+    }
+
+    /**
+     * Updates the total size after a file was written and removes the least
+     * recently used files if the cache is too big.
+     */
+    private synchronized void onWritten(long delta) {
+        if (mSize < 0) {
+            mSize = 0;
+            File[] files = listThumbnails();
+            if (files != null) {
+                for (File file : files) {
+                    mSize += file.length();
+                }
+            }
+        } else {
+            mSize += delta;
+        }
+        if (mSize > mMaxSize) {
+            trim((long) (mMaxSize * TRIM_FRACTION));
+        }
+    }
+
+    private void trim(long size) {
+        File[] files = listThumbnails();
+        if (files == null) {
+            return;
+        }
+        final long[] lastModified = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+        }
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long x = lastModified[a.intValue()];
+                long y = lastModified[b.intValue()];
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        for (int i = 0; i < order.length && total > size; i++) {
+            File file = files[order[i].intValue()];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        mSize = total;
+    }
+
+    private static String digest(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            char[] chars = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
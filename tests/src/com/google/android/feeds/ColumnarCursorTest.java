@@ -0,0 +1,196 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import junit.framework.TestCase;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+/**
+ * Test case for {@link ColumnarCursor}.
+ */
+public class ColumnarCursorTest extends TestCase {
+
+    private static final String[] COLUMNS = {
+            "_id", "title", "rating", "extra"
+    };
+
+    /**
+     * Rows of every type, with types changing between rows in the last
+     * column.
+     */
+    private static final Object[][] ROWS = {
+            {
+                    Long.valueOf(1), "Title", Double.valueOf(4.5), null
+            }, {
+                    Integer.valueOf(2), "Title", Double.valueOf(-0.25), Long.valueOf(7)
+            }, {
+                    Long.valueOf(Long.MAX_VALUE), "", null, "42"
+            }, {
+                    null, null, Double.valueOf(3), Boolean.TRUE
+            }, {
+                    Short.valueOf((short) 5), "12", Double.valueOf(1e3), Double.valueOf(2.5)
+            }
+    };
+
+    public void testMatrixCursorParity() {
+        MatrixCursor expected = new MatrixCursor(COLUMNS);
+        ColumnarCursor actual = new ColumnarCursor(COLUMNS);
+        for (Object[] row : ROWS) {
+            expected.addRow(row);
+            actual.addRow(row);
+        }
+        assertEquals(expected.getCount(), actual.getCount());
+        for (int position = 0; position < ROWS.length; position++) {
+            assertTrue(expected.moveToPosition(position));
+            assertTrue(actual.moveToPosition(position));
+            for (int column = 0; column < COLUMNS.length; column++) {
+                String message = "row " + position + ", column " + column;
+                assertEquals(message, expected.getType(column), actual.getType(column));
+                assertEquals(message, expected.getString(column), actual.getString(column));
+                assertEquals(message, expected.isNull(column), actual.isNull(column));
+                assertEquals(message, getLong(expected, column), getLong(actual, column));
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a column as a {@code long}, or the name of the
+     * exception thrown if the value cannot be converted.
+     */
+    private static String getLong(Cursor cursor, int column) {
+        try {
+            return Long.toString(cursor.getLong(column));
+        } catch (NumberFormatException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    public void testMixedTypeFallback() {
+        ColumnarCursor cursor = new ColumnarCursor(new String[] {
+            "value"
+        });
+        cursor.newRow().add(1L);
+        cursor.newRow().add((Object) null);
+        cursor.newRow().add("two");
+        cursor.newRow().add(3.5);
+        cursor.newRow().add(new byte[] {
+            4
+        });
+
+        // Values stored before the fallback are kept
+        assertTrue(cursor.moveToPosition(0));
+        assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(0));
+        assertEquals(1, cursor.getLong(0));
+        assertTrue(cursor.moveToNext());
+        assertTrue(cursor.isNull(0));
+        assertEquals(Cursor.FIELD_TYPE_NULL, cursor.getType(0));
+        assertTrue(cursor.moveToNext());
+        assertEquals(Cursor.FIELD_TYPE_STRING, cursor.getType(0));
+        assertEquals("two", cursor.getString(0));
+        assertTrue(cursor.moveToNext());
+        assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(0));
+        assertEquals(3.5, cursor.getDouble(0), 0);
+        assertTrue(cursor.moveToNext());
+        assertEquals(Cursor.FIELD_TYPE_BLOB, cursor.getType(0));
+        assertEquals(4, cursor.getBlob(0)[0]);
+    }
+
+    /**
+     * Checks that {@code null} values are tracked across the 64-row chunks of
+     * packed columns, including rows that are never set.
+     */
+    public void testNullsAcrossChunks() {
+        ColumnarCursor cursor = new ColumnarCursor(new String[] {
+                "long", "double", "string"
+        });
+        int count = 200;
+        for (int row = 0; row < count; row++) {
+            ColumnarCursor.RowBuilder builder = cursor.newRow();
+            if (isNullRow(row)) {
+                // Leave the columns unset or set them to null
+                if (row % 2 == 0) {
+                    builder.add((Object) null).add((Object) null).add((Object) null);
+                }
+            } else {
+                builder.add((long) row).add(row / 2.0).add("s" + row);
+            }
+        }
+        for (int row = 0; row < count; row++) {
+            assertTrue(cursor.moveToPosition(row));
+            String message = "row " + row;
+            if (isNullRow(row)) {
+                for (int column = 0; column < 3; column++) {
+                    assertTrue(message, cursor.isNull(column));
+                    assertEquals(message, Cursor.FIELD_TYPE_NULL, cursor.getType(column));
+                    assertNull(message, cursor.getString(column));
+                }
+                assertEquals(message, 0, cursor.getLong(0));
+            } else {
+                assertFalse(message, cursor.isNull(0));
+                assertEquals(message, row, cursor.getLong(0));
+                assertEquals(message, Cursor.FIELD_TYPE_FLOAT, cursor.getType(1));
+                assertEquals(message, row / 2.0, cursor.getDouble(1), 0);
+                assertEquals(message, "s" + row, cursor.getString(2));
+            }
+        }
+    }
+
+    private static boolean isNullRow(int row) {
+        int offset = row % 64;
+        return offset == 0 || offset == 63 || row % 5 == 0 || row >= 190;
+    }
+
+    public void testDeclaredTypes() {
+        ColumnarCursor cursor = new ColumnarCursor(new String[] {
+                "integer", "float", "string", "blob"
+        }, new int[] {
+                Cursor.FIELD_TYPE_INTEGER, Cursor.FIELD_TYPE_FLOAT, Cursor.FIELD_TYPE_STRING,
+                Cursor.FIELD_TYPE_BLOB
+        });
+        cursor.newRow().add(1L).add(2L).add("three").add(Long.valueOf(4));
+        cursor.newRow().add(Integer.valueOf(5)).add(Integer.valueOf(6)).add(null).add("seven");
+
+        // Integers are widened in floating-point columns
+        assertTrue(cursor.moveToFirst());
+        assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(1));
+        assertEquals(2.0, cursor.getDouble(1), 0);
+        assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(3));
+        assertTrue(cursor.moveToNext());
+        assertEquals(5, cursor.getLong(0));
+        assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(1));
+        assertEquals(6.0, cursor.getDouble(1), 0);
+        assertTrue(cursor.isNull(2));
+        assertEquals("seven", cursor.getString(3));
+
+        assertRejected(cursor, 0, "one");
+        assertRejected(cursor, 0, Double.valueOf(1.5));
+        assertRejected(cursor, 1, "two");
+        assertRejected(cursor, 2, Long.valueOf(3));
+        assertRejected(cursor, 2, new byte[0]);
+    }
+
+    private static void assertRejected(ColumnarCursor cursor, int column, Object value) {
+        try {
+            cursor.newRow().set(column, value);
+            fail("Column " + column + " accepted " + value);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
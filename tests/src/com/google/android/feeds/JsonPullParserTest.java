@@ -0,0 +1,235 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.feeds;
+
+import junit.framework.TestCase;
+
+import com.google.android.feeds.JsonPullParser.Token;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Test case for {@link JsonPullParser}.
+ */
+public class JsonPullParserTest extends TestCase {
+
+    private static JsonPullParser parser(String json) {
+        return new JsonPullParser(new StringReader(json));
+    }
+
+    /**
+     * Reads a whole document back into a compact string, with numbers as they
+     * appear in the document.
+     */
+    private static String read(JsonPullParser parser) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        read(parser, builder);
+        assertEquals(Token.END_DOCUMENT, parser.peek());
+        return builder.toString();
+    }
+
+    private static void read(JsonPullParser parser, StringBuilder builder) throws IOException {
+        switch (parser.peek()) {
+            case BEGIN_ARRAY:
+                parser.beginArray();
+                builder.append('[');
+                for (int i = 0; parser.hasNext(); i++) {
+                    builder.append(i != 0 ? "," : "");
+                    read(parser, builder);
+                }
+                parser.endArray();
+                builder.append(']');
+                break;
+            case BEGIN_OBJECT:
+                parser.beginObject();
+                builder.append('{');
+                for (int i = 0; parser.hasNext(); i++) {
+                    builder.append(i != 0 ? "," : "");
+                    builder.append(parser.nextName()).append(':');
+                    read(parser, builder);
+                }
+                parser.endObject();
+                builder.append('}');
+                break;
+            case STRING:
+                builder.append('"').append(parser.nextString()).append('"');
+                break;
+            case NUMBER:
+                builder.append(parser.nextString());
+                break;
+            case BOOLEAN:
+                builder.append(parser.nextBoolean());
+                break;
+            case NULL:
+                parser.nextNull();
+                builder.append("null");
+                break;
+            default:
+                fail("Unexpected " + parser.peek());
+        }
+    }
+
+    private static void assertSyntaxError(String json) {
+        try {
+            read(parser(json));
+            fail("Expected an error for " + json);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testNesting() throws IOException {
+        String json = " {\"a\": [1, {\"b\": []}, [[\"c\"]]],\n"
+                + "\"d\":{}, \"e\":{\"f\":{\"g\":null}}} ";
+        assertEquals("{a:[1,{b:[]},[[\"c\"]]],d:{},e:{f:{g:null}}}", read(parser(json)));
+        assertEquals("[]", read(parser("[]")));
+        assertEquals("42", read(parser("42")));
+    }
+
+    public void testDeepNesting() throws IOException {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            json.append('[');
+        }
+        for (int i = 0; i < 100; i++) {
+            json.append(']');
+        }
+        assertEquals(json.toString(), read(parser(json.toString())));
+    }
+
+    public void testLiterals() throws IOException {
+        JsonPullParser parser = parser("[true, false, null]");
+        parser.beginArray();
+        assertEquals(Token.BOOLEAN, parser.peek());
+        assertTrue(parser.nextBoolean());
+        assertFalse(parser.nextBoolean());
+        assertEquals(Token.NULL, parser.peek());
+        parser.nextNull();
+        parser.endArray();
+        assertEquals(Token.END_DOCUMENT, parser.peek());
+
+        assertSyntaxError("[tru]");
+        assertSyntaxError("[truex]");
+        assertSyntaxError("[nul]");
+        assertSyntaxError("[False]");
+    }
+
+    public void testEscapes() throws IOException {
+        JsonPullParser parser = parser("\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u0041\\u00e9\"");
+        assertEquals("a\"b\\c/d\b\f\n\r\tA\u00e9", parser.nextString());
+        assertSyntaxError("\"\\x\"");
+        assertSyntaxError("\"\\u12\"");
+        assertSyntaxError("\"abc");
+    }
+
+    /**
+     * Checks that strings and escape sequences that span the boundary of the
+     * 1 KB read buffer are read correctly, at every offset.
+     */
+    public void testEscapesAcrossBuffer() throws IOException {
+        String value = "x\\u0041\\n\\\"y";
+        for (int padding = 1000; padding < 1030; padding++) {
+            StringBuilder json = new StringBuilder("[\"");
+            for (int i = 0; i < padding; i++) {
+                json.append('p');
+            }
+            json.append("\", \"").append(value).append("\"]");
+            JsonPullParser parser = parser(json.toString());
+            parser.beginArray();
+            assertEquals(padding, parser.nextString().length());
+            assertEquals("xA\n\"y", parser.nextString());
+            parser.endArray();
+        }
+    }
+
+    public void testLongString() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            value.append((char) ('a' + i % 26));
+            if (i % 100 == 0) {
+                value.append('"');
+            }
+        }
+        String escaped = value.toString().replace("\"", "\\\"");
+        assertEquals(value.toString(), parser("\"" + escaped + "\"").nextString());
+    }
+
+    public void testNumbers() throws IOException {
+        assertEquals("[0,-0,1,-12,1.5,-0.25,1e3,1E+3,2.5e-3]",
+                read(parser("[0, -0, 1, -12, 1.5, -0.25, 1e3, 1E+3, 2.5e-3]")));
+
+        JsonPullParser parser = parser("[9223372036854775807, -1.5e3, \"7\"]");
+        parser.beginArray();
+        assertEquals(Long.MAX_VALUE, parser.nextLong());
+        assertEquals(-1500.0, parser.nextDouble(), 0);
+        assertEquals(7, parser.nextLong());
+        parser.endArray();
+    }
+
+    public void testMalformedNumbers() {
+        String[] numbers = {
+                "1-2", "1e+-", "1e", "1.", ".5", "-", "--1", "01", "-01", "1.e3", "1e3.5", "1x",
+                "+1", "0x10", "1.5.2"
+        };
+        for (String number : numbers) {
+            assertSyntaxError("[" + number + "]");
+        }
+    }
+
+    public void testSkipValue() throws IOException {
+        JsonPullParser parser = parser("{\"a\": {\"b\": [1, {\"c\": 2}]}, \"d\": 3, \"e\": 4}");
+        parser.beginObject();
+        assertEquals("a", parser.nextName());
+        parser.skipValue();
+        // Skipping a name skips its value as well
+        parser.skipValue();
+        assertEquals("e", parser.nextName());
+        assertEquals(4, parser.nextLong());
+        parser.endObject();
+        assertEquals(Token.END_DOCUMENT, parser.peek());
+    }
+
+    public void testSyntaxErrors() {
+        assertSyntaxError("");
+        assertSyntaxError("[1,]");
+        assertSyntaxError("[1 2]");
+        assertSyntaxError("{\"a\" 1}");
+        assertSyntaxError("{\"a\": 1,}");
+        assertSyntaxError("{a: 1}");
+        assertSyntaxError("[1");
+        assertSyntaxError("[1] x");
+        assertSyntaxError("['a']");
+    }
+
+    public void testWrongToken() throws IOException {
+        JsonPullParser parser = parser("[\"a\"]");
+        try {
+            parser.beginObject();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+        parser.beginArray();
+        try {
+            parser.nextLong();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
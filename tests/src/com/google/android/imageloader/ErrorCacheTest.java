@@ -0,0 +1,113 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import junit.framework.TestCase;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Test case for {@link ErrorCache}.
+ */
+public class ErrorCacheTest extends TestCase {
+
+    private static final long SECOND = 1000;
+
+    private static final long MINUTE = 60 * SECOND;
+
+    private static final String URL = "http://www.example.com/image.png";
+
+    private ErrorCache mErrors;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // No jitter, so that delays are predictable
+        mErrors = new ErrorCache(new ErrorBackoff(0));
+    }
+
+    public void testGetHost() {
+        assertEquals("www.example.com", ErrorCache.getHost(URL));
+        assertEquals("example.com:8080", ErrorCache.getHost("http://example.com:8080"));
+        assertEquals("example.com", ErrorCache.getHost("http://example.com?q=1"));
+        assertNull(ErrorCache.getHost("file:///sdcard/image.png"));
+        assertNull(ErrorCache.getHost("image.png"));
+    }
+
+    public void testExponentialBackoff() {
+        IOException error = new FileNotFoundException();
+        mErrors.put(URL, error, 0);
+        assertSame(error, mErrors.get(URL, 5 * MINUTE - 1));
+        assertNull(mErrors.get(URL, 5 * MINUTE));
+
+        mErrors.put(URL, error, 5 * MINUTE);
+        assertSame(error, mErrors.get(URL, 15 * MINUTE - 1));
+        assertNull(mErrors.get(URL, 15 * MINUTE));
+
+        // A success resets the delay
+        mErrors.remove(URL);
+        mErrors.put(URL, error, 15 * MINUTE);
+        assertNull(mErrors.get(URL, 20 * MINUTE));
+    }
+
+    public void testMaxDelay() {
+        IOException error = new SocketTimeoutException();
+        for (int i = 0; i < 20; i++) {
+            mErrors.put(URL, error, 0);
+        }
+        assertNotNull(mErrors.get(URL, 5 * MINUTE - 1));
+        assertNull(mErrors.get(URL, 5 * MINUTE));
+    }
+
+    public void testDecodeErrorsDoNotBlockHost() {
+        for (int i = 0; i < 10; i++) {
+            mErrors.put(URL + i, new ImageDecodeException(), 0);
+        }
+        assertNull(mErrors.get(URL, 0));
+    }
+
+    public void testHostBackoff() {
+        IOException error = new SocketTimeoutException();
+        mErrors.put(URL + 1, error, 0);
+        mErrors.put(URL + 2, error, 0);
+        assertNull(mErrors.get(URL, 0));
+
+        // The third consecutive failure holds back the whole host
+        mErrors.put(URL + 3, new IOException(), 0);
+        assertNotNull(mErrors.get(URL, 0));
+        assertNull(mErrors.get(URL, 5 * SECOND));
+        assertNull(mErrors.get("http://other.example.com/image.png", 0));
+
+        // A success on the host releases it
+        mErrors.put(URL + 4, error, 5 * SECOND);
+        assertNotNull(mErrors.get(URL, 5 * SECOND));
+        mErrors.remove(URL + 5);
+        assertNull(mErrors.get(URL, 5 * SECOND));
+    }
+
+    public void testUrlErrorIgnoresHost() {
+        IOException error = new SocketTimeoutException();
+        for (int i = 1; i <= 3; i++) {
+            mErrors.put(URL + i, error, 0);
+        }
+        assertNotNull(mErrors.get(URL, 0));
+        assertNull(mErrors.getUrlError(URL, 0));
+        assertSame(error, mErrors.getUrlError(URL + 1, 0));
+    }
+}
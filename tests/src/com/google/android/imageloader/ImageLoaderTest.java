@@ -20,6 +20,7 @@ import com.google.android.imageloader.ImageLoader.BindResult;
 
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
 import android.widget.ImageView;
 
 import java.util.concurrent.CountDownLatch;
@@ -90,6 +91,26 @@ public class ImageLoaderTest extends AndroidTestCase implements ImageLoader.Call
         assertEquals(BindResult.LOADING, loader.bind(view, GOOGLE_LOGO, null));
     }
 
+    /**
+     * Checks that the scheme ends at the first {@code ':'} only if it comes
+     * before the path, query or fragment.
+     */
+    @SmallTest
+    public void testGetProtocol() {
+        assertEquals("http", ImageLoader.getProtocol(GOOGLE_LOGO));
+        assertEquals("http", ImageLoader.getProtocol("http://x"));
+        assertEquals("content", ImageLoader.getProtocol("content://media/external/images/media/1"));
+        assertEquals("file", ImageLoader.getProtocol("file:///sdcard/a.jpg"));
+        assertEquals("android.resource",
+                ImageLoader.getProtocol("android.resource://com.example/drawable/icon"));
+        assertEquals("", ImageLoader.getProtocol(":a"));
+        assertNull(ImageLoader.getProtocol("/sdcard/a.jpg"));
+        assertNull(ImageLoader.getProtocol("images/a:b.jpg"));
+        assertNull(ImageLoader.getProtocol("a.jpg?t=1:2"));
+        assertNull(ImageLoader.getProtocol("a.jpg#1:2"));
+        assertNull(ImageLoader.getProtocol(""));
+    }
+
     /**
      * {@inheritDoc}
      */
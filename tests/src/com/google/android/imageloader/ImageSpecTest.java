@@ -0,0 +1,96 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+
+import junit.framework.TestCase;
+
+/**
+ * Test case for {@link ImageSpec}.
+ */
+public class ImageSpecTest extends TestCase {
+
+    public void testSmallImage() {
+        ImageSpec spec = new ImageSpec(100, 100);
+        assertFalse(spec.isLarger(100, 50));
+        assertEquals(1, spec.getSampleSize(100, 50));
+        assertEquals(100, spec.getScaledWidth(100, 50));
+        assertEquals(50, spec.getScaledHeight(100, 50));
+    }
+
+    public void testWideImage() {
+        ImageSpec spec = new ImageSpec(100, 100);
+        assertTrue(spec.isLarger(1000, 100));
+        assertEquals(8, spec.getSampleSize(1000, 100));
+        assertEquals(100, spec.getScaledWidth(1000, 100));
+        assertEquals(10, spec.getScaledHeight(1000, 100));
+    }
+
+    public void testTallImage() {
+        ImageSpec spec = new ImageSpec(100, 100);
+        assertEquals(16, spec.getSampleSize(200, 2000));
+        assertEquals(10, spec.getScaledWidth(200, 2000));
+        assertEquals(100, spec.getScaledHeight(200, 2000));
+    }
+
+    public void testSampleSizeKeepsScaledSize() {
+        ImageSpec spec = new ImageSpec(96, 96);
+        int sampleSize = spec.getSampleSize(1024, 768);
+        assertEquals(8, sampleSize);
+        assertTrue(1024 / sampleSize >= spec.getScaledWidth(1024, 768));
+        assertTrue(768 / sampleSize >= spec.getScaledHeight(1024, 768));
+    }
+
+    public void testEquals() {
+        assertEquals(new ImageSpec(10, 20), new ImageSpec(10, 20, Bitmap.Config.ARGB_8888));
+        assertFalse(new ImageSpec(10, 20).equals(new ImageSpec(10, 20, Bitmap.Config.RGB_565)));
+        assertFalse(new ImageSpec(10, 20).equals(new ImageSpec(20, 10)));
+    }
+
+    public void testTransformations() {
+        ImageSpec spec = new ImageSpec(10, 20);
+        ImageSpec square = spec.withTransformation(new Transformation("square"));
+        ImageSpec rounded = square.withTransformation(new Transformation("rounded(4)"));
+        assertEquals(0, spec.getTransformationCount());
+        assertEquals(2, rounded.getTransformationCount());
+        assertEquals("rounded(4)", rounded.getTransformation(1).getKey());
+        assertFalse(spec.equals(square));
+        assertEquals(square, spec.withTransformation(new Transformation("square")));
+        assertEquals(square.hashCode(), spec.withTransformation(new Transformation("square"))
+                .hashCode());
+        assertFalse(rounded.equals(spec.withTransformation(new Transformation("rounded(4)"))
+                .withTransformation(new Transformation("square"))));
+    }
+
+    private static class Transformation implements BitmapTransformation {
+
+        private final String mKey;
+
+        Transformation(String key) {
+            mKey = key;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        public Bitmap transform(Bitmap source) {
+            return source;
+        }
+    }
+}
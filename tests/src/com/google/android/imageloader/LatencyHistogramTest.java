@@ -0,0 +1,56 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import junit.framework.TestCase;
+
+/**
+ * Test case for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBuckets() {
+        assertEquals(0, LatencyHistogram.getBucket(0));
+        assertEquals(1, LatencyHistogram.getBucket(1));
+        assertEquals(2, LatencyHistogram.getBucket(3));
+        assertEquals(7, LatencyHistogram.getBucket(100));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 9; i++) {
+            histogram.record(10);
+        }
+        histogram.record(1000);
+        ImageLoaderStats.Histogram snapshot = histogram.snapshot();
+        assertEquals(10, snapshot.getCount());
+        assertEquals(109, snapshot.getMean());
+        assertEquals(16, snapshot.getPercentile(50));
+        assertEquals(16, snapshot.getPercentile(90));
+        assertEquals(1024, snapshot.getPercentile(99));
+    }
+
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.snapshot().getBucket(0));
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentile(50));
+    }
+}
@@ -0,0 +1,132 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test case for {@link MediaThumbnails}.
+ */
+public class MediaThumbnailsTest extends AndroidTestCase {
+
+    private static final String EXIF = "exif";
+
+    private static final String MINI = "mini";
+
+    /**
+     * Records which thumbnails are read, instead of reading them.
+     */
+    private class RecordingThumbnails extends MediaThumbnails {
+
+        final List<String> mLoaded = new ArrayList<String>();
+
+        private final Bitmap mExifThumbnail;
+
+        private final Bitmap mMiniThumbnail;
+
+        RecordingThumbnails(Bitmap exifThumbnail, Bitmap miniThumbnail) {
+            super(getContext().getContentResolver());
+            mExifThumbnail = exifThumbnail;
+            mMiniThumbnail = miniThumbnail;
+        }
+
+        @Override
+        Bitmap loadExifThumbnail(String path, int width, int height, int targetWidth,
+                int targetHeight, BitmapDecoder decoder) {
+            mLoaded.add(EXIF);
+            return mExifThumbnail;
+        }
+
+        @Override
+        Bitmap loadMiniThumbnail(long id, int width, int height, int targetWidth,
+                int targetHeight, BitmapDecoder decoder) {
+            mLoaded.add(MINI);
+            return mMiniThumbnail;
+        }
+
+        Bitmap load(boolean external) throws Exception {
+            return loadThumbnail(42, "/sdcard/DCIM/a.jpg", external, 3264, 2448, 128, 96,
+                    BitmapDecoder.get());
+        }
+    }
+
+    private Bitmap mExifThumbnail;
+
+    private Bitmap mMiniThumbnail;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExifThumbnail = Bitmap.createBitmap(160, 120, Bitmap.Config.RGB_565);
+        mMiniThumbnail = Bitmap.createBitmap(512, 384, Bitmap.Config.RGB_565);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExifThumbnail.recycle();
+        mMiniThumbnail.recycle();
+        super.tearDown();
+    }
+
+    /**
+     * Checks that the mini thumbnail is not read when the EXIF thumbnail can
+     * be used.
+     */
+    public void testExifThumbnailFirst() throws Exception {
+        RecordingThumbnails thumbnails = new RecordingThumbnails(mExifThumbnail, mMiniThumbnail);
+        assertSame(mExifThumbnail, thumbnails.load(true));
+        assertEquals(Arrays.asList(EXIF), thumbnails.mLoaded);
+    }
+
+    /**
+     * Checks that the mini thumbnail is read when the EXIF thumbnail cannot be
+     * used.
+     */
+    public void testMiniThumbnailSecond() throws Exception {
+        RecordingThumbnails thumbnails = new RecordingThumbnails(null, mMiniThumbnail);
+        assertSame(mMiniThumbnail, thumbnails.load(true));
+        assertEquals(Arrays.asList(EXIF, MINI), thumbnails.mLoaded);
+    }
+
+    /**
+     * Checks that mini thumbnails are not looked up for the internal volume.
+     */
+    public void testInternalVolume() throws Exception {
+        RecordingThumbnails thumbnails = new RecordingThumbnails(null, mMiniThumbnail);
+        assertNull(thumbnails.load(false));
+        assertEquals(Arrays.asList(EXIF), thumbnails.mLoaded);
+    }
+
+    public void testLargeEnough() {
+        assertTrue(MediaThumbnails.isUsable(160, 120, 3264, 2448, 128, 96));
+        assertTrue(MediaThumbnails.isUsable(512, 384, 3264, 2448, 512, 384));
+        assertFalse(MediaThumbnails.isUsable(160, 120, 3264, 2448, 200, 150));
+    }
+
+    public void testAspectRatio() {
+        // A cropped micro thumbnail of a 4:3 photo
+        assertFalse(MediaThumbnails.isUsable(96, 96, 3264, 2448, 64, 48));
+        // A letterboxed EXIF thumbnail of a 16:9 photo
+        assertFalse(MediaThumbnails.isUsable(160, 120, 1920, 1080, 96, 54));
+        assertTrue(MediaThumbnails.isUsable(161, 120, 3264, 2448, 96, 72));
+    }
+}
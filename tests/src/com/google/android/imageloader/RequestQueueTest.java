@@ -0,0 +1,121 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test case for {@link RequestQueue}.
+ */
+public class RequestQueueTest extends TestCase implements RequestQueue.Policy<String> {
+
+    private List<String> mDropped;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDropped = new ArrayList<String>();
+    }
+
+    /**
+     * Requests prefixed with "explicit" cannot be dropped.
+     */
+    public boolean isDroppable(String request) {
+        return !request.startsWith("explicit");
+    }
+
+    public void onDropped(String request) {
+        mDropped.add(request);
+    }
+
+    public void testOrder() {
+        RequestQueue<String> queue = new RequestQueue<String>(10, this);
+        queue.addLast("last1");
+        queue.addFirst("first1");
+        queue.addLast("last2");
+        queue.addFirst("first2");
+
+        assertEquals("first2", queue.poll());
+        assertEquals("first1", queue.poll());
+        assertEquals("last1", queue.poll());
+        assertEquals("last2", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Checks that the oldest requests added to the front are dropped first.
+     */
+    public void testDropOldestFirst() {
+        RequestQueue<String> queue = new RequestQueue<String>(3, this);
+        queue.addLast("prefetch1");
+        queue.addFirst("adapter1");
+        queue.addFirst("adapter2");
+        queue.addFirst("adapter3");
+        assertEquals(3, queue.size());
+        assertEquals(1, mDropped.size());
+        assertEquals("adapter1", mDropped.get(0));
+
+        queue.addFirst("adapter4");
+        assertEquals("adapter2", mDropped.get(1));
+
+        queue.addFirst("adapter5");
+        queue.addFirst("adapter6");
+        assertEquals("adapter3", mDropped.get(2));
+        assertEquals("adapter4", mDropped.get(3));
+        assertEquals(3, queue.size());
+        assertEquals(4, queue.getDroppedCount());
+        assertEquals(3, queue.getPeakSize());
+
+        // Requests added to the front are dropped before the others
+        queue.setCapacity(2);
+        assertEquals("adapter5", mDropped.get(4));
+        queue.setCapacity(1);
+        assertEquals("adapter6", mDropped.get(5));
+        assertEquals("prefetch1", queue.poll());
+    }
+
+    /**
+     * Checks that requests that cannot be dropped are kept even when the queue
+     * is over capacity.
+     */
+    public void testNeverDropExplicit() {
+        RequestQueue<String> queue = new RequestQueue<String>(2, this);
+        queue.addLast("explicit1");
+        queue.addLast("explicit2");
+        queue.addFirst("adapter1");
+        assertEquals("adapter1", mDropped.get(0));
+
+        queue.addLast("explicit3");
+        assertEquals(1, mDropped.size());
+        assertEquals(3, queue.size());
+        assertEquals("explicit1", queue.poll());
+    }
+
+    public void testRemove() {
+        RequestQueue<String> queue = new RequestQueue<String>(10, this);
+        queue.addFirst("adapter1");
+        queue.addLast("explicit1");
+        assertTrue(queue.remove("adapter1"));
+        assertFalse(queue.remove("adapter1"));
+        assertTrue(mDropped.isEmpty());
+        assertEquals(1, queue.size());
+    }
+}
@@ -0,0 +1,124 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test case for {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest extends TestCase implements
+        RequestScheduler.Callback<String> {
+
+    private List<String> mStarted;
+
+    private List<String> mDropped;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mStarted = new ArrayList<String>();
+        mDropped = new ArrayList<String>();
+    }
+
+    /**
+     * Requests are keyed by the text before the first '#'.
+     */
+    public String getKey(String request) {
+        int index = request.indexOf('#');
+        return index != -1 ? request.substring(0, index) : request;
+    }
+
+    /**
+     * Requests prefixed with "explicit" cannot be dropped.
+     */
+    public boolean isDroppable(String request) {
+        return !request.startsWith("explicit");
+    }
+
+    public void onDropped(String request) {
+        mDropped.add(request);
+    }
+
+    public void start(String request) {
+        mStarted.add(request);
+    }
+
+    public void testTaskLimit() {
+        RequestScheduler<String> scheduler = new RequestScheduler<String>(2, 10, this);
+        scheduler.submit("a", false);
+        scheduler.submit("b", false);
+        scheduler.submit("c", false);
+        assertEquals(2, mStarted.size());
+        assertEquals(2, scheduler.getActiveTaskCount());
+        assertEquals(1, scheduler.getQueue().size());
+
+        scheduler.finish("a");
+        scheduler.onTaskFinished();
+        assertEquals("c", mStarted.get(2));
+        assertEquals(2, scheduler.getInFlightCount());
+    }
+
+    public void testDeduplication() {
+        RequestScheduler<String> scheduler = new RequestScheduler<String>(1, 10, this);
+        scheduler.submit("a#1", false);
+        assertEquals("a#1", scheduler.get("a"));
+        assertTrue(scheduler.isInFlight("a#1"));
+
+        // A replaced request does not remove its replacement
+        scheduler.submit("a#2", false);
+        scheduler.finish("a#1");
+        assertEquals("a#2", scheduler.get("a"));
+        scheduler.finish("a#2");
+        assertNull(scheduler.get("a"));
+    }
+
+    public void testMoveToFront() {
+        RequestScheduler<String> scheduler = new RequestScheduler<String>(1, 10, this);
+        scheduler.submit("a", false);
+        scheduler.submit("b", false);
+        scheduler.submit("c", false);
+        assertFalse(scheduler.moveToFront("a"));
+        assertTrue(scheduler.moveToFront("c"));
+        scheduler.onTaskFinished();
+        assertEquals("c", mStarted.get(1));
+    }
+
+    public void testDropped() {
+        RequestScheduler<String> scheduler = new RequestScheduler<String>(1, 1, this);
+        scheduler.submit("running", false);
+        scheduler.submit("explicit", false);
+        scheduler.submit("dropped", false);
+        assertEquals(1, mDropped.size());
+        assertEquals("dropped", mDropped.get(0));
+        assertNull(scheduler.get("dropped"));
+        assertEquals("explicit", scheduler.get("explicit"));
+    }
+
+    public void testDequeue() {
+        RequestScheduler<String> scheduler = new RequestScheduler<String>(1, 10, this);
+        scheduler.submit("a", false);
+        scheduler.submit("b", false);
+        assertTrue(scheduler.dequeue("b"));
+        assertFalse(scheduler.dequeue("a"));
+        scheduler.onTaskFinished();
+        assertEquals(1, mStarted.size());
+    }
+}
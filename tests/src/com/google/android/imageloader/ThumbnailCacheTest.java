@@ -0,0 +1,96 @@
+/*-
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.imageloader;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Test case for {@link ThumbnailCache}.
+ */
+public class ThumbnailCacheTest extends AndroidTestCase {
+
+    private static final String URL = "http://www.example.com/image.png";
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "ThumbnailCacheTest");
+        new ThumbnailCache(mDirectory, 1).clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new ThumbnailCache(mDirectory, 1).clear();
+        super.tearDown();
+    }
+
+    /**
+     * Checks that a thumbnail whose configuration differs from the one
+     * preferred by the {@link ImageSpec} is read back instead of being
+     * deleted.
+     */
+    @SmallTest
+    public void testConfigMismatch() {
+        ThumbnailCache cache = new ThumbnailCache(mDirectory, 1024 * 1024);
+        ImageSpec spec = new ImageSpec(16, 16, Bitmap.Config.RGB_565);
+
+        // Images with transparency are decoded as ARGB_8888
+        Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        cache.put(URL, spec, bitmap);
+
+        Bitmap thumbnail = cache.get(URL, spec, null);
+        assertNotNull(thumbnail);
+        assertEquals(Bitmap.Config.ARGB_8888, thumbnail.getConfig());
+        assertEquals(16, thumbnail.getWidth());
+        assertEquals(16, thumbnail.getHeight());
+
+        // The file is kept
+        assertNotNull(cache.get(URL, spec, null));
+    }
+
+    /**
+     * Checks that trimming the cache does not delete the temporary file of a
+     * write in progress.
+     */
+    @SmallTest
+    public void testTrimKeepsTemporaryFiles() throws IOException {
+        // The directory is left behind by earlier tests and runs
+        assertTrue(mDirectory.mkdirs() || mDirectory.isDirectory());
+        File temp = File.createTempFile("tmp", null, mDirectory);
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            output.write(new byte[4096]);
+        } finally {
+            output.close();
+        }
+
+        // The thumbnail alone is larger than the cache, so writing it trims
+        ThumbnailCache cache = new ThumbnailCache(mDirectory, 16);
+        ImageSpec spec = new ImageSpec(16, 16, Bitmap.Config.ARGB_8888);
+        cache.put(URL, spec, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+
+        assertTrue(temp.exists());
+    }
+}